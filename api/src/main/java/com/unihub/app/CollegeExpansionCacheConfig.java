@@ -0,0 +1,29 @@
+package com.unihub.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.unihub.app.service.CollegeQueryExpansionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(CollegeSearchProperties.class)
+@RequiredArgsConstructor
+public class CollegeExpansionCacheConfig {
+    private final CollegeSearchProperties collegeSearchProperties;
+
+    // hit/miss/eviction counters show up under /actuator/metrics/cache.* with tag cache=college-expansions
+    @Bean
+    public Cache<String, CollegeQueryExpansionService.Expansion> collegeExpansionCache(MeterRegistry meterRegistry) {
+        Cache<String, CollegeQueryExpansionService.Expansion> cache = Caffeine.newBuilder()
+                .maximumSize(collegeSearchProperties.getExpansionCacheSize())
+                .recordStats()
+                .build();
+
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, "college-expansions");
+    }
+}
@@ -0,0 +1,15 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "colleges.import")
+public class CollegeImportProperties {
+    // Scorecard pages fetched, embedded and written at once, keep within the scorecard upstream's max-concurrent-requests
+    private int concurrency = 4;
+    // the Scorecard API serves at most 100 schools a page
+    private int pageSize = 100;
+}
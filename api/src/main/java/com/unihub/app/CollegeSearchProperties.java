@@ -0,0 +1,28 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "search.colleges")
+public class CollegeSearchProperties {
+    // ask the completion what college a query means, off searches the query as typed
+    private boolean expand = true;
+    // embed the raw query alongside the name expansion instead of after it
+    private boolean speculative = true;
+    // past this the expansion counts as NONE and the raw query is searched
+    private Duration expansionTimeout = Duration.ofMillis(1500);
+    private Duration embeddingTimeout = Duration.ofSeconds(3);
+    // how long a NONE answer is trusted before the completion is asked again
+    private Duration negativeExpansionTtl = Duration.ofDays(7);
+    // expansions kept in memory, the rest are read from events.college_query_expansion on a miss
+    private int expansionCacheSize = 50_000;
+    // completion answers not asked for again within this are deleted, the builder's entries are kept
+    private Duration expansionRetention = Duration.ofDays(90);
+    // queries up to this long are matched by name and location words first, the semantic search only runs when nothing matches
+    private int typeaheadMaxLength = 40;
+}
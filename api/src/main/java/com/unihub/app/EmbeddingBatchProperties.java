@@ -0,0 +1,19 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "openai.embedding-batch")
+public class EmbeddingBatchProperties {
+    // send concurrent embedding requests as one call, off sends one call per text
+    private boolean enabled = true;
+    // how long the first text of a batch waits for company
+    private Duration window = Duration.ofMillis(5);
+    // a full batch is sent right away, the endpoint accepts up to 2048 inputs
+    private int maxSize = 64;
+}
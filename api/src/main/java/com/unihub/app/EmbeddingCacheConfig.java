@@ -0,0 +1,29 @@
+package com.unihub.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({EmbeddingCacheProperties.class, EmbeddingStoreProperties.class, EmbeddingBatchProperties.class, EmbeddingProperties.class})
+@RequiredArgsConstructor
+public class EmbeddingCacheConfig {
+    private final EmbeddingCacheProperties embeddingCacheProperties;
+
+    // hit/miss/eviction counters show up under /actuator/metrics/cache.* with tag cache=embeddings
+    @Bean
+    public Cache<String, float[]> embeddingCache(MeterRegistry meterRegistry) {
+        Cache<String, float[]> cache = Caffeine.newBuilder()
+                .maximumSize(embeddingCacheProperties.getMaximumSize())
+                .expireAfterWrite(embeddingCacheProperties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, "embeddings");
+    }
+}
@@ -0,0 +1,16 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "openai.embedding-cache")
+public class EmbeddingCacheProperties {
+    // each entry holds a 1536-float vector (~6KB), so 10k entries is roughly 60MB of heap
+    private long maximumSize = 10_000;
+    private Duration expireAfterWrite = Duration.ofHours(24);
+}
@@ -0,0 +1,21 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "embedding")
+public class EmbeddingProperties {
+    // openai or hashing, see EmbeddingProvider
+    private String provider = "openai";
+    private Hashing hashing = new Hashing();
+
+    @Getter
+    @Setter
+    public static class Hashing {
+        // has to match the vector columns and search.vector.ann.dimensions
+        private int dimensions = 1536;
+    }
+}
@@ -0,0 +1,18 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "openai.embedding-store")
+public class EmbeddingStoreProperties {
+    private boolean enabled = false;
+    private String path = "data/embedding-store.bin";
+    private int dimensions = 1536;
+    // force every appended record to disk before returning, so a crash loses at most the record being written
+    private boolean fsync = true;
+    // rewrite the file at startup when more than this fraction of records are duplicates or torn
+    private double compactThreshold = 0.1;
+}
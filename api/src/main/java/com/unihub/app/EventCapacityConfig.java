@@ -0,0 +1,9 @@
+package com.unihub.app;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EventCapacityProperties.class)
+public class EventCapacityConfig {
+}
@@ -0,0 +1,24 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "events.capacity")
+public class EventCapacityProperties {
+    // seats freed on other instances only show up in the database, a full counter older than this rereads it
+    private Duration resyncInterval = Duration.ofSeconds(1);
+    private WriteBehind writeBehind = new WriteBehind();
+
+    @Getter
+    @Setter
+    public static class WriteBehind {
+        // num_attendees changes are batched instead of written by every RSVP, for one instance admitting RSVPs;
+        // how often they are written is events.capacity.write-behind.flush-interval, read by the flush schedule
+        private boolean enabled = false;
+    }
+}
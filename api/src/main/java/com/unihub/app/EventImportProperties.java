@@ -0,0 +1,17 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "events.import")
+public class EventImportProperties {
+    // rows of one import, it is held in memory and written in one transaction
+    private int maxRows = 10000;
+    // texts per embedding call
+    private int embeddingBatchSize = 256;
+    // imports up to this size refresh recommendations around each event, larger ones rebuild them all
+    private int refreshAroundMaxRows = 100;
+}
@@ -0,0 +1,15 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "search.recommendations")
+public class EventRecommendationProperties {
+    // neighbours stored per event, the endpoint serves the first 20
+    private int size = 20;
+    private float maxDistance = 1 - 0.8f;
+    private String rebuildCron = "0 0 4 * * *";
+}
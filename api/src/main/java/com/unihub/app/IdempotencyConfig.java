@@ -0,0 +1,30 @@
+package com.unihub.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.unihub.app.service.IdempotencyService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(IdempotencyProperties.class)
+@RequiredArgsConstructor
+public class IdempotencyConfig {
+    private final IdempotencyProperties idempotencyProperties;
+
+    // replays show up as hits under /actuator/metrics/cache.* with tag cache=idempotency
+    @Bean
+    public Cache<String, IdempotencyService.Entry> idempotencyCache(MeterRegistry meterRegistry) {
+        Cache<String, IdempotencyService.Entry> cache = Caffeine.newBuilder()
+                .maximumSize(idempotencyProperties.getMaximumSize())
+                .expireAfterWrite(idempotencyProperties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+    }
+}
@@ -0,0 +1,17 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "http.idempotency")
+public class IdempotencyProperties {
+    // an entry is the key, a request hash and the serialized response, an EventDTO is about 1KB
+    private long maximumSize = 10_000;
+    // retries come within seconds, a day also covers a client resubmitting after an app restart
+    private Duration expireAfterWrite = Duration.ofHours(24);
+}
@@ -0,0 +1,68 @@
+package com.unihub.app;
+
+import com.unihub.app.util.ConcurrencyLimitInterceptor;
+import com.unihub.app.util.GzipResponseInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One RestTemplate per upstream, each on its own JDK HttpClient so connections are kept alive
+ * (or multiplexed over HTTP/2) per upstream and a burst against one never queues behind
+ * another. Timeouts and limits come from http.clients.upstreams.&lt;name&gt;.*; request
+ * timings are in http.client.requests through the Boot builder.
+ */
+@Configuration
+@EnableConfigurationProperties(OutboundHttpProperties.class)
+@RequiredArgsConstructor
+public class OutboundHttpConfig {
+    public static final String OPENAI = "openai";
+    public static final String SCORECARD = "scorecard";
+
+    private final OutboundHttpProperties outboundHttpProperties;
+    private final RestTemplateBuilder restTemplateBuilder;
+    private final MeterRegistry meterRegistry;
+
+    @Bean
+    public RestTemplate openAIRestTemplate() {
+        return restTemplate(OPENAI);
+    }
+
+    // College Scorecard, the default for anything that doesn't ask for an upstream
+    @Bean
+    @Primary
+    public RestTemplate scorecardRestTemplate() {
+        return restTemplate(SCORECARD);
+    }
+
+    private RestTemplate restTemplate(String name) {
+        OutboundHttpProperties.Upstream upstream = outboundHttpProperties.upstream(name);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(upstream.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(upstream.getConnectTimeout())
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(client);
+        requestFactory.setReadTimeout(upstream.getReadTimeout());
+
+        List<ClientHttpRequestInterceptor> interceptors = new ArrayList<>();
+        interceptors.add(new ConcurrencyLimitInterceptor(name, upstream.getMaxConcurrentRequests(), upstream.getAcquireTimeout(), meterRegistry));
+        if (upstream.isGzip()) interceptors.add(new GzipResponseInterceptor());
+
+        return restTemplateBuilder
+                .requestFactory(() -> requestFactory)
+                .additionalInterceptors(interceptors)
+                .build();
+    }
+}
@@ -0,0 +1,35 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "http.clients")
+public class OutboundHttpProperties {
+    // keyed by upstream name, an upstream left out runs on the defaults below
+    private Map<String, Upstream> upstreams = new HashMap<>();
+
+    public Upstream upstream(String name) {
+        return upstreams.getOrDefault(name, new Upstream());
+    }
+
+    @Getter
+    @Setter
+    public static class Upstream {
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        // how long a response may take to start arriving
+        private Duration readTimeout = Duration.ofSeconds(30);
+        // negotiated through ALPN on https, falls back to HTTP/1.1 when the server doesn't speak it
+        private boolean http2 = true;
+        private boolean gzip = true;
+        // requests in flight at once, further callers queue for up to acquireTimeout
+        private int maxConcurrentRequests = 32;
+        private Duration acquireTimeout = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,9 @@
+package com.unihub.app;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(VectorSearchProperties.class)
+public class VectorSearchConfig {
+}
@@ -0,0 +1,48 @@
+package com.unihub.app;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "search.vector")
+public class VectorSearchProperties {
+    // nearest neighbours taken from the HNSW index before filters and sorting are applied
+    private int candidates = 200;
+    // a search page that comes back short from a full candidate set retries with four times as many, up to this
+    private int maxCandidates = 1000;
+    // hnsw.ef_search used when a request doesn't ask for one, higher trades latency for recall
+    private int defaultEfSearch = 100;
+    private int maxEfSearch = 1000;
+    private Ann ann = new Ann();
+
+    /**
+     * The ef_search to run a k-NN scan with. HNSW never returns more than ef_search rows,
+     * so it is never lower than the number of candidates.
+     */
+    public int efSearchFor(Integer requested) {
+        return efSearchFor(requested, candidates);
+    }
+
+    public int efSearchFor(Integer requested, int candidates) {
+        int efSearch = requested != null ? requested : defaultEfSearch;
+        return Math.min(Math.max(efSearch, candidates), Math.max(maxEfSearch, candidates));
+    }
+
+    @Getter
+    @Setter
+    public static class Ann {
+        // serve event k-NN from an in-process HNSW graph, pgvector stays the fallback while it loads
+        private boolean enabled = true;
+        private int dimensions = 1536;
+        private int m = 16;
+        private int efConstruction = 100;
+        // replaced and removed nodes keep routing searches until they pass this share of the graph, which is then rebuilt
+        private double maxTombstoneShare = 0.2;
+        // how often the graph is reconciled with the events that have embeddings, for writes made on other instances
+        private Duration refreshInterval = Duration.ofMinutes(1);
+    }
+}
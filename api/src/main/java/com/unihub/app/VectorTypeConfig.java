@@ -0,0 +1,65 @@
+package com.unihub.app;
+
+import com.unihub.app.util.BinaryVector;
+import com.zaxxer.hikari.HikariDataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@Configuration
+public class VectorTypeConfig {
+    // hands Hikari a postgres data source that registers the binary vector type once per physical connection
+    @Bean
+    static BeanPostProcessor vectorTypeRegistrar() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari
+                        && hikari.getDataSource() == null
+                        && hikari.getJdbcUrl() != null
+                        && hikari.getJdbcUrl().startsWith("jdbc:postgresql:")) {
+                    PGSimpleDataSource postgres = new PGSimpleDataSource();
+                    postgres.setURL(hikari.getJdbcUrl());
+                    hikari.getDataSourceProperties().forEach((key, value) -> {
+                        try {
+                            postgres.setProperty(key.toString(), value.toString());
+                        } catch (SQLException e) {
+                            throw new IllegalArgumentException("Invalid data source property " + key, e);
+                        }
+                    });
+                    hikari.setDataSource(new VectorTypeDataSource(postgres));
+                }
+                return bean;
+            }
+        };
+    }
+
+    static class VectorTypeDataSource extends DelegatingDataSource {
+        VectorTypeDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return register(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return register(super.getConnection(username, password));
+        }
+
+        private Connection register(Connection connection) throws SQLException {
+            // a PGBinaryObject type switches the connection to binary send/receive for that oid
+            connection.unwrap(PGConnection.class).addDataType("vector", BinaryVector.class);
+            return connection;
+        }
+    }
+}
@@ -37,9 +37,10 @@ public class CollegeController {
             @RequestParam(required = false) String searchQuery,
             @RequestParam(required = false) String sortBy,
             @RequestParam(required = false, defaultValue = "3") int limit,
-            @RequestParam(required = false) String lastNameASC
+            @RequestParam(required = false) String lastNameASC,
+            @RequestParam(required = false) Integer efSearch
     ) {
-        CollegeSearchRequest request = new CollegeSearchRequest(location, searchQuery, sortBy, limit, lastNameASC);
+        CollegeSearchRequest request = new CollegeSearchRequest(location, searchQuery, sortBy, limit, lastNameASC, efSearch);
         return ResponseEntity.ok().body(collegeService.getColleges(request));
     }
 
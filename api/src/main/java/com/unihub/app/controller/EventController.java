@@ -1,22 +1,25 @@
 package com.unihub.app.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.unihub.app.dto.EventDTO;
 import com.unihub.app.dto.RegistrationDTO;
 import com.unihub.app.dto.request.*;
+import com.unihub.app.dto.response.EventImportResponse;
 import com.unihub.app.dto.response.RegisteredResponse;
 import com.unihub.app.dto.response.SearchedEventsResponse;
 import com.unihub.app.model.Event;
 import com.unihub.app.model.RegistrationStatus;
+import com.unihub.app.service.EventImportService;
 import com.unihub.app.service.EventService;
+import com.unihub.app.service.IdempotencyService;
 import lombok.RequiredArgsConstructor;
-import org.apache.tomcat.util.http.fileupload.FileUploadException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.List;
 
@@ -25,6 +28,10 @@ import java.util.List;
 public class EventController {
     @Autowired
     private EventService eventService;
+    @Autowired
+    private EventImportService eventImportService;
+    @Autowired
+    private IdempotencyService idempotencyService;
 
     @GetMapping("/")
     public ResponseEntity<List<EventDTO>> getEvents() {
@@ -41,11 +48,14 @@ public class EventController {
             @RequestParam(required = false, defaultValue = "recency") String sortBy,
             @RequestParam(required = false, defaultValue = "3") int limit,
             @RequestParam(required = false) Integer lastNumAttendees,
-            @RequestParam(required = false) Instant lastStartDate
+            @RequestParam(required = false) Instant lastStartDate,
+            @RequestParam(required = false) Integer efSearch,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "vector") String searchMode
     ) {
         EventSearchRequest searchRequest = new EventSearchRequest(
                 types, startDate, endDate, minAttendees, searchQuery,
-                sortBy, limit, lastNumAttendees, lastStartDate
+                sortBy, limit, lastNumAttendees, lastStartDate, efSearch, cursor, searchMode
         );
         return ResponseEntity.ok().body(eventService.getEvents(searchRequest));
     }
@@ -68,16 +78,30 @@ public class EventController {
     @GetMapping("/is-registered/{eventId}/{userId}")
     public ResponseEntity<RegisteredResponse> isRegistered(@PathVariable Integer eventId, @PathVariable Integer userId) { return ResponseEntity.ok().body(eventService.isRegistered(eventId, userId)); }
 
+    // a retry with the same Idempotency-Key gets the first response, without another upload or embedding
     @PostMapping("/create")
-    public ResponseEntity<EventDTO> saveEvent(@ModelAttribute CreateEventRequest event, @RequestParam(value = "image", required = false) MultipartFile image) throws FileUploadException, JsonProcessingException {
-        return ResponseEntity.ok().body(eventService.saveEvent(event, image));
+    public ResponseEntity<EventDTO> saveEvent(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey, @ModelAttribute CreateEventRequest event, @RequestParam(value = "image", required = false) MultipartFile image) throws IOException {
+        String fingerprint = idempotencyKey != null ? idempotencyService.fingerprint(event, image != null ? image.getBytes() : new byte[0]) : null;
+        IdempotencyService.Outcome<EventDTO> outcome = idempotencyService.execute(idempotencyKey, "create-event", fingerprint, EventDTO.class,
+                () -> eventService.saveEvent(event, image));
+        return ResponseEntity.ok().headers(outcome.headers()).body(outcome.body());
+    }
+
+    // one event per line as application/x-ndjson, or text/csv with a header row
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<EventImportResponse> importEvents(@RequestHeader("Content-Type") String contentType, InputStream body) throws IOException {
+        return ResponseEntity.ok().body(eventImportService.importEvents(body, contentType));
     }
 
     // change to registration
     @PostMapping("/rsvp")
-    public ResponseEntity<Void> rsvpEvent(@RequestBody RsvpRequest rsvpBody) {
-        eventService.rsvpEvent(rsvpBody.getEventId(), rsvpBody.getUserEmail(), rsvpBody.getDisplayName(), rsvpBody.getTickets(), rsvpBody.getStatus(), rsvpBody.getAnswers());
-        return ResponseEntity.ok().build();
+    public ResponseEntity<Void> rsvpEvent(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey, @RequestBody RsvpRequest rsvpBody) {
+        String fingerprint = idempotencyKey != null ? idempotencyService.fingerprint(rsvpBody) : null;
+        IdempotencyService.Outcome<Void> outcome = idempotencyService.execute(idempotencyKey, "rsvp", fingerprint, Void.class, () -> {
+            eventService.rsvpEvent(rsvpBody.getEventId(), rsvpBody.getUserEmail(), rsvpBody.getDisplayName(), rsvpBody.getTickets(), rsvpBody.getStatus(), rsvpBody.getAnswers());
+            return null;
+        });
+        return ResponseEntity.ok().headers(outcome.headers()).build();
     }
 
     // change to registration
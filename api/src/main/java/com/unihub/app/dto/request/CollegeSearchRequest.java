@@ -16,4 +16,6 @@ public class CollegeSearchRequest {
     private String sortBy = "name_asc";
     private int limit = 3;
     private String lastNameASC;
+    // hnsw.ef_search for the vector scan, higher values improve recall at the cost of latency
+    private Integer efSearch;
 }
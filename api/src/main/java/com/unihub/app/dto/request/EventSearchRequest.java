@@ -20,4 +20,10 @@ public class EventSearchRequest {
     private int limit = 3;
     private Integer lastNumAttendees;
     private Instant lastStartDate;
+    // hnsw.ef_search for the vector scan, higher values improve recall at the cost of latency
+    private Integer efSearch;
+    // nextCursor of the previous page, takes over from lastNumAttendees/lastStartDate
+    private String cursor;
+    // vector, lexical (full-text only, no embedding call) or hybrid (both, fused by rank)
+    private String searchMode = "vector";
 }
@@ -0,0 +1,26 @@
+package com.unihub.app.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportEventRequest {
+    private String name;
+    private String type;
+    private String description;
+    private String location;
+    private Integer capacity;
+    private String image;
+    private Instant eventStartDateUtc;
+    private Instant eventEndDateUtc;
+    private String eventTimezone;
+    private Integer creatorId;
+    private Integer maxTickets;
+    private Boolean requiresApproval;
+    private String approvalSuccessMessage;
+}
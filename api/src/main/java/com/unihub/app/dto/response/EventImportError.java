@@ -0,0 +1,14 @@
+package com.unihub.app.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventImportError {
+    // 1-based data row, the CSV header not counted
+    private int row;
+    private String message;
+}
@@ -0,0 +1,18 @@
+package com.unihub.app.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventImportResponse {
+    private int received;
+    private int imported;
+    private List<Integer> eventIds;
+    // rows left out, the rest were imported regardless
+    private List<EventImportError> errors;
+}
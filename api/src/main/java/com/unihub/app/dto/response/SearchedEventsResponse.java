@@ -16,4 +16,8 @@ public class SearchedEventsResponse {
     private Integer lastNumAttendees;
     private Instant lastStartDate;
     private boolean hasNext;
+    // pass back as cursor to fetch the next page
+    private String nextCursor;
+    // the search only looked at its nearest or best-ranked candidates, more events may match than it pages through
+    private boolean capped;
 }
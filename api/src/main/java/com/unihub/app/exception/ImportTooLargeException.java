@@ -0,0 +1,11 @@
+package com.unihub.app.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class ImportTooLargeException extends RuntimeException {
+    public ImportTooLargeException(String message) {
+        super(message);
+    }
+}
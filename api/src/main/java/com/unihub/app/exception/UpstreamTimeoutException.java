@@ -0,0 +1,11 @@
+package com.unihub.app.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class UpstreamTimeoutException extends RuntimeException {
+    public UpstreamTimeoutException(String message) {
+        super(message);
+    }
+}
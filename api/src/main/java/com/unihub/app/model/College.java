@@ -1,6 +1,5 @@
 package com.unihub.app.model;
 
-import com.unihub.app.util.VectorConverter;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.proxy.HibernateProxy;
@@ -29,10 +28,6 @@ public class College {
 
     private String thumbnail;
 
-    @Column(columnDefinition = "vector(1536)")
-    @Convert(converter = VectorConverter.class)
-    private float[] embedding;
-
     @OneToMany(mappedBy = "college", cascade = CascadeType.ALL)
     @ToString.Exclude
     List<AppUser> students;
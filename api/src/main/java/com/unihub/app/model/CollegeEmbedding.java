@@ -0,0 +1,46 @@
+package com.unihub.app.model;
+
+import com.unihub.app.util.VectorType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Type;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.util.Objects;
+
+// the embedding column of events.college, mapped apart from College so loading colleges never materializes the vector
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@Entity
+@Immutable
+
+@Table(name = "college", schema = "events")
+public class CollegeEmbedding {
+    @Id
+    private Integer id;
+
+    @Column(columnDefinition = "vector(1536)")
+    @Type(VectorType.class)
+    @ToString.Exclude
+    private float[] embedding;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        CollegeEmbedding collegeEmbedding = (CollegeEmbedding) o;
+        return getId() != null && Objects.equals(getId(), collegeEmbedding.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
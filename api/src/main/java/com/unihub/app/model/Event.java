@@ -1,7 +1,5 @@
 package com.unihub.app.model;
 
-import com.unihub.app.util.FloatArrayConverter;
-import com.unihub.app.util.VectorConverter;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.Type;
@@ -43,7 +41,8 @@ public class Event {
 
     private String image;
 
-    @Column(name = "num_attendees", columnDefinition = "integer default 0")
+    // only ever changed by EventCapacityService's conditional updates, an entity save would write back a stale count
+    @Column(name = "num_attendees", columnDefinition = "integer default 0", updatable = false)
     private int numAttendees;
 
     @Column(name = "event_start_date_utc", nullable = false)
@@ -55,10 +54,6 @@ public class Event {
     @Column(name = "event_timezone", nullable = false)
     private String eventTimezone;
 
-    @Column(columnDefinition = "vector(1536)")
-    @Convert(converter = VectorConverter.class)
-    private float[] embedding;
-
     @ManyToOne
     @JoinColumn(name = "creator_user_id")
     private AppUser creator;
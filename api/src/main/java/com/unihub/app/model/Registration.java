@@ -32,6 +32,10 @@ public class Registration {
     @Column(nullable = false)
     private RegistrationStatus status = RegistrationStatus.APPROVED;
 
+    // place in the event's waitlist, only set while WAITLISTED
+    @Column(name = "waitlist_seq")
+    private Long waitlistSeq;
+
     @ManyToOne
     @JoinColumn(name = "attendee_user_id", nullable = false)
     private AppUser attendee;
@@ -4,6 +4,7 @@ public enum RegistrationStatus {
     PENDING,
     APPROVED,
     REJECTED,
-    CANCELLED
+    CANCELLED,
+    WAITLISTED
 }
 
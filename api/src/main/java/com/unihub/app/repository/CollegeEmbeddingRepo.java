@@ -0,0 +1,7 @@
+package com.unihub.app.repository;
+
+import com.unihub.app.model.CollegeEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface CollegeEmbeddingRepo extends JpaRepository<CollegeEmbedding, Integer> {
+}
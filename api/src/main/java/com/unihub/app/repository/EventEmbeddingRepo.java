@@ -0,0 +1,14 @@
+package com.unihub.app.repository;
+
+import com.unihub.app.model.EventEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface EventEmbeddingRepo extends JpaRepository<EventEmbedding, Integer> {
+    List<EventEmbedding> findTop500ByIdGreaterThanAndEmbeddingIsNotNullOrderByIdAsc(Integer id);
+
+    @Query("SELECT e.id FROM EventEmbedding e WHERE e.embedding IS NOT NULL")
+    List<Integer> findIdsWithEmbedding();
+}
@@ -0,0 +1,145 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventCapacityProperties;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind for num_attendees, used when events.capacity.write-behind.enabled is set.
+ * Committed seat changes add up per event in memory and are written for all events at once by
+ * one UPDATE ... FROM (VALUES ...) on a short schedule, instead of each RSVP updating the event
+ * row. Changes not yet written when the process dies are lost, so startup recounts every event
+ * from its approved registrations.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AttendeeCountBuffer implements SmartInitializingSingleton {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private EventCapacityProperties properties;
+
+    private final PlatformTransactionManager transactionManager;
+
+    // events per UPDATE, two parameters each
+    private static final int FLUSH_CHUNK = 1000;
+
+    // an event leaves the map once its changes add up to nothing, merge keeps that atomic per event
+    private final Map<Integer, Integer> pending = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return properties.getWriteBehind().isEnabled();
+    }
+
+    /** Adds a committed change of the event's seat count, written with the next flush. */
+    public void add(Integer eventId, int seats) {
+        pending.merge(eventId, seats, AttendeeCountBuffer::sumOrNull);
+    }
+
+    /** Seats changed since the last flush, which num_attendees doesn't show yet. */
+    public int pending(Integer eventId) {
+        return pending.getOrDefault(eventId, 0);
+    }
+
+    // runs before the web server takes requests, so no RSVP races it
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (isEnabled()) recount();
+    }
+
+    /** Sets every event's num_attendees to the seats of its approved registrations. */
+    public int recount() {
+        long start = System.currentTimeMillis();
+        int corrected = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("""
+                        UPDATE events.event e
+                        SET num_attendees = counted.attendees
+                        FROM (
+                            SELECT ev.id, coalesce(sum(r.tickets) FILTER (WHERE r.status = 'APPROVED'), 0) AS attendees
+                            FROM events.event ev
+                            LEFT JOIN events.registration r ON r.event_id = ev.id
+                            GROUP BY ev.id
+                        ) counted
+                        WHERE e.id = counted.id AND e.num_attendees <> counted.attendees
+                        """).executeUpdate());
+        log.info("Recounted attendees from registrations in {} ms, {} events corrected", System.currentTimeMillis() - start, corrected);
+        return corrected;
+    }
+
+    @Scheduled(fixedDelayString = "${events.capacity.write-behind.flush-interval:250ms}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<int[]> deltas = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : pending.entrySet()) {
+            deltas.add(new int[]{entry.getKey(), entry.getValue()});
+        }
+        if (deltas.isEmpty()) return;
+        // the same lock order as any other flush
+        deltas.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    em.unwrap(Session.class).doWork(connection -> {
+                        for (int from = 0; from < deltas.size(); from += FLUSH_CHUNK) {
+                            List<int[]> chunk = deltas.subList(from, Math.min(deltas.size(), from + FLUSH_CHUNK));
+                            try (PreparedStatement update = connection.prepareStatement(updateFor(chunk.size()))) {
+                                int parameter = 1;
+                                for (int[] delta : chunk) {
+                                    update.setInt(parameter++, delta[0]);
+                                    update.setInt(parameter++, delta[1]);
+                                }
+                                update.executeUpdate();
+                            }
+                        }
+                    }));
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush attendee counts of {} events, retrying with the next flush", deltas.size(), e);
+            return;
+        }
+
+        // only what was written is taken off, changes added meanwhile stay for the next flush; since
+        // the commit the written seats have counted twice, which errs on the side of fewer free seats
+        for (int[] delta : deltas) {
+            pending.merge(delta[0], -delta[1], AttendeeCountBuffer::sumOrNull);
+        }
+    }
+
+    // null removes the event from pending
+    private static Integer sumOrNull(Integer seats, Integer change) {
+        int sum = seats + change;
+        return sum != 0 ? sum : null;
+    }
+
+    private static String updateFor(int events) {
+        StringBuilder sql = new StringBuilder("""
+                UPDATE events.event e
+                SET num_attendees = e.num_attendees + v.seats
+                FROM (VALUES """);
+        for (int i = 0; i < events; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(CAST(? AS integer), CAST(? AS integer))");
+        }
+        return sql.append(") AS v(id, seats) WHERE e.id = v.id").toString();
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+}
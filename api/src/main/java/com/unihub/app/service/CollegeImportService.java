@@ -0,0 +1,245 @@
+package com.unihub.app.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.unihub.app.CollegeImportProperties;
+import com.unihub.app.util.BinaryVector;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.unihub.app.util.UrlFormatter.extractDomain;
+import static com.unihub.app.util.VectorOperations.normalize;
+
+/**
+ * Imports every school of the College Scorecard API into events.college. Pages are fetched,
+ * embedded in one call each and written with batched upserts keyed by Scorecard id, several
+ * pages at a time. Pages are sorted by Scorecard id, so a page number names the same schools
+ * from one run to the next. A page and its record in events.college_import_page commit together,
+ * so an interrupted import picks up with the pages it hasn't committed; the records are cleared
+ * once an import finishes without failed pages, so the next one refreshes every row.
+ *
+ * <p>Starting the app with {@code --import-colleges} runs an import and exits,
+ * {@code --import-colleges=fresh} starts over from the first page.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollegeImportService implements ApplicationRunner {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private OpenAIService openAIService;
+    @Autowired
+    private CollegeTypeaheadIndex collegeTypeaheadIndex;
+    @Autowired
+    private CollegeImportProperties properties;
+    @Autowired
+    private ApplicationContext applicationContext;
+    @Autowired
+    @Qualifier("scorecardRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Value("${colleges.api-key}")
+    private String apiKey;
+
+    @Value("${colleges_image.api-key}")
+    private String imageApiKey;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private static final String SCHOOLS_URL = "https://api.data.gov/ed/collegescorecard/v1/schools"
+            + "?api_key={apiKey}&page={page}&per_page={pageSize}&sort=id:asc&fields=id,school.name,school.school_url,school.city,school.state";
+
+    private record School(int scorecardId, String name, String location, String thumbnail) {}
+
+    private record Page(int total, List<School> schools) {}
+
+    public record Result(int pages, int skippedPages, int colleges, List<Integer> failedPages) {}
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("import-colleges")) return;
+
+        importColleges(args.getOptionValues("import-colleges").contains("fresh"));
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    /**
+     * Runs an import on the calling thread, resuming the last one unless fresh is set. Returns
+     * null when an import is already running.
+     */
+    public Result importColleges(boolean fresh) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("A college import is already running");
+            return null;
+        }
+        try {
+            if (fresh) clearCommittedPages();
+            Result result = runImport();
+            // only a run that got every page starts the next one over
+            if (result.failedPages().isEmpty()) clearCommittedPages();
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Result runImport() {
+        long start = System.currentTimeMillis();
+        Set<Integer> committed = findCommittedPages();
+
+        // the first page also says how many there are
+        Page first = fetch(0);
+        int pages = (first.total() + properties.getPageSize() - 1) / properties.getPageSize();
+        log.info("Importing {} colleges in {} pages, {} already committed", first.total(), pages, committed.size());
+
+        AtomicInteger completedPages = new AtomicInteger(committed.size());
+        AtomicInteger colleges = new AtomicInteger();
+        List<Integer> failedPages = Collections.synchronizedList(new ArrayList<>());
+        Semaphore slots = new Semaphore(properties.getConcurrency());
+
+        try (ExecutorService pipeline = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int page = 0; page < pages; page++) {
+                if (committed.contains(page)) continue;
+                slots.acquireUninterruptibly();
+
+                int number = page;
+                pipeline.execute(() -> {
+                    try {
+                        List<School> schools = number == 0 ? first.schools() : fetch(number).schools();
+                        colleges.addAndGet(write(number, schools));
+                        log.info("Imported college page {} ({} of {} pages, {} colleges this run)",
+                                number, completedPages.incrementAndGet(), pages, colleges.get());
+                    } catch (RuntimeException e) {
+                        failedPages.add(number);
+                        log.warn("Failed to import college page {}, the next import retries it", number, e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        }
+
+        collegeTypeaheadIndex.load();
+        List<Integer> failed = failedPages.stream().sorted().toList();
+        log.info("Imported {} colleges from {} pages in {} ms, {} pages failed",
+                colleges.get(), pages - committed.size() - failed.size(), System.currentTimeMillis() - start, failed.size());
+        return new Result(pages, committed.size(), colleges.get(), failed);
+    }
+
+    private Page fetch(int page) {
+        JsonNode response = restTemplate.getForObject(SCHOOLS_URL, JsonNode.class, apiKey, page, properties.getPageSize());
+
+        List<School> schools = new ArrayList<>();
+        for (JsonNode info : response.get("results")) {
+            String name = text(info, "school.name");
+            if (name == null || name.isBlank()) continue;
+
+            String city = text(info, "school.city");
+            String state = text(info, "school.state");
+            String location = city != null && state != null ? city + ", " + state : "";
+
+            String domain = extractDomain(text(info, "school.school_url"));
+            String thumbnail = domain != null ? "https://img.logo.dev/" + domain + "?token=" + imageApiKey : null;
+
+            schools.add(new School(info.get("id").asInt(), name, location, thumbnail));
+        }
+        return new Page(response.get("metadata").get("total").asInt(), schools);
+    }
+
+    private int write(int page, List<School> schools) {
+        List<float[]> embeddings = openAIService.generateEmbeddings(
+                schools.stream().map(school -> school.name() + school.name() + school.name()).toList());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.unwrap(Session.class).doWork(connection -> {
+                    // colleges scraped before Scorecard ids were kept are claimed instead of duplicated
+                    try (PreparedStatement adopt = connection.prepareStatement("""
+                            UPDATE events.college SET scorecard_id = ?
+                            WHERE id = (
+                                SELECT id FROM events.college
+                                WHERE scorecard_id IS NULL AND name = ? AND location = ?
+                                ORDER BY id LIMIT 1
+                            )
+                            AND NOT EXISTS (SELECT 1 FROM events.college WHERE scorecard_id = ?)
+                            """)) {
+                        for (School school : schools) {
+                            adopt.setInt(1, school.scorecardId());
+                            adopt.setString(2, school.name());
+                            adopt.setString(3, school.location());
+                            adopt.setInt(4, school.scorecardId());
+                            adopt.addBatch();
+                        }
+                        adopt.executeBatch();
+                    }
+
+                    try (PreparedStatement upsert = connection.prepareStatement("""
+                            INSERT INTO events.college (scorecard_id, name, location, thumbnail, embedding)
+                            VALUES (?, ?, ?, ?, ?)
+                            ON CONFLICT (scorecard_id) DO UPDATE
+                            SET name = EXCLUDED.name, location = EXCLUDED.location,
+                                thumbnail = EXCLUDED.thumbnail, embedding = EXCLUDED.embedding
+                            """)) {
+                        for (int i = 0; i < schools.size(); i++) {
+                            School school = schools.get(i);
+                            upsert.setInt(1, school.scorecardId());
+                            upsert.setString(2, school.name());
+                            upsert.setString(3, school.location());
+                            upsert.setString(4, school.thumbnail());
+                            upsert.setObject(5, new BinaryVector(normalize(embeddings.get(i))));
+                            upsert.addBatch();
+                        }
+                        upsert.executeBatch();
+                    }
+
+                    try (PreparedStatement committed = connection.prepareStatement("""
+                            INSERT INTO events.college_import_page (page, colleges) VALUES (?, ?)
+                            ON CONFLICT (page) DO UPDATE SET colleges = EXCLUDED.colleges, completed_at = now()
+                            """)) {
+                        committed.setInt(1, page);
+                        committed.setInt(2, schools.size());
+                        committed.executeUpdate();
+                    }
+                }));
+        return schools.size();
+    }
+
+    private void clearCommittedPages() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createNativeQuery("DELETE FROM events.college_import_page").executeUpdate());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Integer> findCommittedPages() {
+        List<Integer> pages = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT page FROM events.college_import_page").getResultList());
+        return new HashSet<>(pages);
+    }
+
+    private static String text(JsonNode info, String field) {
+        JsonNode value = info.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+}
@@ -0,0 +1,237 @@
+package com.unihub.app.service;
+
+import com.unihub.app.CollegeSearchProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Remembers what the college search completion made of a query ("mit" ->
+ * "Massachusetts Institute of Technology") in events.college_query_expansion and in a bounded
+ * in-memory cache, so repeated searches skip the completion. NONE answers are only cached in
+ * memory, and a nightly prune drops completion answers nobody searched for again within
+ * search.colleges.expansion-retention.
+ *
+ * <p>Starting the app with {@code --build-college-expansions} precomputes entries for every
+ * college (its name, acronym and short forms) and exits.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollegeQueryExpansionService implements ApplicationRunner {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private CollegeSearchProperties collegeSearchProperties;
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private final PlatformTransactionManager transactionManager;
+    private final Cache<String, Expansion> collegeExpansionCache;
+
+    // name is null when the completion answered NONE
+    public record Expansion(String name, Instant createdAt) {}
+
+    private static final Set<String> ACRONYM_STOPWORDS = Set.of("of", "the", "and", "at", "in", "for", "&");
+
+    /** The known expansion of a query, or null when it has to be asked for. */
+    public Expansion lookup(String query) {
+        String key = key(query);
+        Expansion expansion = collegeExpansionCache.getIfPresent(key);
+        if (expansion == null && key.length() <= 255) {
+            // evicted from memory or never asked for, the table is still cheaper than the completion
+            expansion = find(key);
+            if (expansion != null) collegeExpansionCache.put(key, expansion);
+        }
+        if (expansion == null) return null;
+        if (expansion.name() == null && expansion.createdAt().plus(collegeSearchProperties.getNegativeExpansionTtl()).isBefore(Instant.now())) {
+            return null;
+        }
+        return expansion;
+    }
+
+    /** Stores a completion answer, name null for NONE, which is only kept in memory. */
+    public void record(String query, String name) {
+        String key = key(query);
+        // longer queries don't fit the column and aren't abbreviations anyway
+        if (key.length() > 255 || (name != null && name.length() > 255)) return;
+        collegeExpansionCache.put(key, new Expansion(name, Instant.now()));
+        // typos and other one-off queries are what mostly comes back NONE
+        if (name == null) return;
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createNativeQuery("""
+                        INSERT INTO events.college_query_expansion (query, expansion, source)
+                        VALUES (:query, :expansion, 'completion')
+                        ON CONFLICT (query) DO UPDATE
+                        SET expansion = EXCLUDED.expansion, source = EXCLUDED.source, created_at = now()
+                        """)
+                        .setParameter("query", key)
+                        .setParameter("expansion", name)
+                        .executeUpdate());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expansion find(String key) {
+        List<Object[]> rows = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT query, expansion, created_at FROM events.college_query_expansion WHERE query = :query")
+                        .setParameter("query", key)
+                        .getResultList());
+        return rows.isEmpty() ? null : new Expansion((String) rows.get(0)[1], toInstant(rows.get(0)[2]));
+    }
+
+    // the builder's entries first, then the most recently asked, as many as the cache holds
+    @EventListener(ApplicationReadyEvent.class)
+    @SuppressWarnings("unchecked")
+    public void load() {
+        List<Object[]> rows = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("""
+                        SELECT query, expansion, created_at FROM events.college_query_expansion
+                        ORDER BY source = 'builder' DESC, created_at DESC
+                        LIMIT :limit
+                        """)
+                        .setParameter("limit", collegeSearchProperties.getExpansionCacheSize())
+                        .getResultList());
+        for (Object[] row : rows) {
+            collegeExpansionCache.put((String) row[0], new Expansion((String) row[1], toInstant(row[2])));
+        }
+        log.info("Loaded {} college query expansions", rows.size());
+    }
+
+    /** Deletes completion answers older than the retention. */
+    @Scheduled(cron = "${search.colleges.expansion-prune-cron:0 30 4 * * *}")
+    public void prune() {
+        int pruned = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("""
+                        DELETE FROM events.college_query_expansion
+                        WHERE source = 'completion' AND created_at < :retainedSince
+                        """)
+                        .setParameter("retainedSince", Instant.now().minus(collegeSearchProperties.getExpansionRetention()))
+                        .executeUpdate());
+        log.info("Pruned {} college query expansions", pruned);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("build-college-expansions")) return;
+
+        int built = build();
+        log.info("Built {} college query expansions", built);
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    /**
+     * Derives the usual short forms of every college name. A form more than one college
+     * shares is left to the completion. Completion answers are kept.
+     */
+    @SuppressWarnings("unchecked")
+    public int build() {
+        List<String> names = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT name FROM events.college").getResultList());
+
+        Map<String, Set<String>> candidates = new HashMap<>();
+        Set<String> officialNames = new HashSet<>();
+        for (String name : names) {
+            officialNames.add(key(name));
+            for (String form : shortForms(name)) {
+                candidates.computeIfAbsent(form, k -> new HashSet<>()).add(name);
+            }
+        }
+
+        Map<String, String> unambiguous = new HashMap<>();
+        candidates.forEach((form, colleges) -> {
+            if (colleges.size() == 1) {
+                unambiguous.put(form, colleges.iterator().next());
+            } else if (officialNames.contains(form)) {
+                // the exact name of one college wins over another's short form
+                colleges.stream().filter(college -> key(college).equals(form)).findFirst()
+                        .ifPresent(college -> unambiguous.put(form, college));
+            }
+        });
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (Map.Entry<String, String> entry : unambiguous.entrySet()) {
+                em.createNativeQuery("""
+                        INSERT INTO events.college_query_expansion (query, expansion, source)
+                        VALUES (:query, :expansion, 'builder')
+                        ON CONFLICT (query) DO UPDATE
+                        SET expansion = EXCLUDED.expansion, source = EXCLUDED.source, created_at = now()
+                        WHERE college_query_expansion.source = 'builder'
+                        """)
+                        .setParameter("query", entry.getKey())
+                        .setParameter("expansion", entry.getValue())
+                        .executeUpdate();
+            }
+        });
+        return unambiguous.size();
+    }
+
+    // same normalization as OpenAIService applies to search queries
+    static String key(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> shortForms(String name) {
+        Set<String> forms = new LinkedHashSet<>();
+        String base = key(name);
+        forms.add(base);
+        if (base.startsWith("the ")) base = base.substring(4);
+        forms.add(base);
+
+        // "university of michigan-ann arbor" is also searched as "university of michigan"
+        int campus = base.indexOf('-');
+        if (campus > 0) {
+            String main = base.substring(0, campus).trim();
+            forms.add(main);
+            addShortForms(forms, main);
+        }
+        addShortForms(forms, base);
+        forms.removeIf(form -> form.length() < 2);
+        return forms;
+    }
+
+    private static void addShortForms(Set<String> forms, String base) {
+        List<String> words = Arrays.asList(base.split("[\\s,]+"));
+
+        // massachusetts institute of technology -> mit, two letters collide too often to be worth it
+        StringBuilder acronym = new StringBuilder();
+        for (String word : words) {
+            if (!ACRONYM_STOPWORDS.contains(word) && !word.isEmpty()) acronym.append(word.charAt(0));
+        }
+        if (acronym.length() >= 3 && !base.contains("-")) forms.add(acronym.toString());
+
+        // georgia institute of technology -> georgia tech
+        if (base.endsWith(" institute of technology")) {
+            forms.add(base.substring(0, base.length() - " institute of technology".length()) + " tech");
+        }
+        // harvard university -> harvard, university of chicago -> chicago
+        for (String suffix : List.of(" university", " college")) {
+            if (base.endsWith(suffix) && base.length() > suffix.length()) forms.add(base.substring(0, base.length() - suffix.length()));
+        }
+        for (String prefix : List.of("university of ", "college of ")) {
+            if (base.startsWith(prefix) && base.length() > prefix.length()) forms.add(base.substring(prefix.length()));
+        }
+    }
+
+    private static Instant toInstant(Object value) {
+        if (value instanceof Instant instant) return instant;
+        if (value instanceof java.sql.Timestamp timestamp) return timestamp.toInstant();
+        if (value instanceof java.time.OffsetDateTime dateTime) return dateTime.toInstant();
+        return Instant.now();
+    }
+}
@@ -1,33 +1,29 @@
 package com.unihub.app.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.unihub.app.CollegeSearchProperties;
+import com.unihub.app.VectorSearchProperties;
 import com.unihub.app.dto.CollegeDTO;
 import com.unihub.app.dto.DTOMapper;
 import com.unihub.app.dto.request.CollegeSearchRequest;
 import com.unihub.app.dto.response.SearchedCollegesResponse;
+import com.unihub.app.exception.UpstreamTimeoutException;
 import com.unihub.app.model.College;
 import com.unihub.app.repository.CollegeRepo;
 import jakarta.persistence.EntityManager;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.Query;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.*;
 
-import static com.unihub.app.util.UrlFormatter.extractDomain;
+import static com.unihub.app.util.VectorType.bindVector;
 
 @Service
 @RequiredArgsConstructor
@@ -39,19 +35,35 @@ public class CollegeService {
     @Autowired
     private DTOMapper dtoMapper;
 
-    @Value("${colleges.api-key}")
-    private String apiKey;
+    @Autowired
+    private OpenAIService openAIService;
 
-    @Value("${colleges_image.api-key}")
-    private String imageApiKey;
+    @Autowired
+    private EntityManager em;
 
-    private final RestTemplate restTemplate;
+    @Autowired
+    private VectorSearchProperties vectorSearchProperties;
 
     @Autowired
-    private OpenAIService openAIService;
+    private CollegeSearchProperties collegeSearchProperties;
 
     @Autowired
-    private EntityManager em;
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CollegeQueryExpansionService collegeQueryExpansionService;
+
+    @Autowired
+    private CollegeTypeaheadIndex collegeTypeaheadIndex;
+
+    @Autowired
+    private CollegeImportService collegeImportService;
+
+    // fan-out for the remote calls of a search, blocking on them is cheap on virtual threads
+    private final ExecutorService searchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // every column College maps, so native searches never pull the embedding column
+    private static final String COLLEGE_COLUMNS = "c.id, c.name, c.location, c.thumbnail";
 
     public List<CollegeDTO> getAllColleges(){
         List<College> colleges = collegeRepo.findAll();
@@ -66,59 +78,193 @@ public class CollegeService {
 
     public CollegeDTO saveCollege(College college) {
         College savedCollege = collegeRepo.save(college);
+        collegeTypeaheadIndex.add(savedCollege);
         CollegeDTO collegeDTO = dtoMapper.toCollegeDTO(savedCollege);
 
         return collegeDTO;
     }
 
+    /**
+     * Short queries are first matched against college name and location words in memory; the
+     * semantic search only runs when nothing matches, or for acronyms and expansions the index
+     * can't place. Its remote calls run before the read
+     * transaction opens, so no pooled connection sits idle while OpenAI answers.
+     */
     public SearchedCollegesResponse getColleges(CollegeSearchRequest request) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT *, ");
-
-        float[] embedding = null;
-        Float[] embeddingObj = null;
-        if (request.getSearchQuery() != null) {
-            String prompt = String.format(
-                    "The user searched for: '%s'. " +
-                            "This might be an abbreviation or nickname for a college. " +
-                            "Provide the full official college name that matches this query. " +
-                            "If it's already a full name, return it as-is. " +
-                            "Examples: 'MIT' -> 'Massachusetts Institute of Technology', " +
-                            "'Georgia Tech' -> 'Georgia Institute of Technology', " +
-                            "'Harvard' -> 'Harvard University'. " +
-                            "Only respond with the college name, nothing else." +
-                            "If you are not sure, respond with the word 'NONE'.",
-                    request.getSearchQuery().replace("\"", "\\\"") // Escape quotes
-            );
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        List<Integer> typeaheadPage = request.getSearchQuery() != null ? typeahead(request) : null;
+        if (typeaheadPage != null) {
+            return transaction.execute(status -> findColleges(typeaheadPage, request.getLimit()));
+        }
+
+        float[] embedding = request.getSearchQuery() != null ? embedSearchQuery(request.getSearchQuery()) : null;
+        return transaction.execute(status -> searchColleges(request, embedding));
+    }
+
+    /**
+     * Ids of the requested page of lexical matches, null when the query has to be searched
+     * semantically. The college a query is known to expand to comes first on the first page, so
+     * "MIT" leads with Massachusetts Institute of Technology rather than Mitchell College.
+     */
+    private List<Integer> typeahead(CollegeSearchRequest request) {
+        String query = request.getSearchQuery();
+        if (query.length() > collegeSearchProperties.getTypeaheadMaxLength()) return null;
+
+        CollegeQueryExpansionService.Expansion known = collegeQueryExpansionService.lookup(query);
+        List<CollegeTypeaheadIndex.Entry> expanded = List.of();
+        if (known != null && known.name() != null) {
+            expanded = collegeTypeaheadIndex.findByName(known.name());
+            // an expansion the index can't place is left to the semantic search
+            if (expanded == null || expanded.isEmpty()) return null;
+        } else if (looksLikeAcronym(query)) {
+            return null;
+        }
+
+        List<CollegeTypeaheadIndex.Entry> matches = collegeTypeaheadIndex.search(query);
+        if (matches == null) return null;
+
+        String location = request.getLocation() != null ? request.getLocation().toLowerCase(Locale.ROOT) : null;
+        List<Integer> page = new ArrayList<>();
+        Set<Integer> expandedIds = new HashSet<>();
+        boolean matched = false;
+        for (CollegeTypeaheadIndex.Entry match : expanded) {
+            if (!inLocation(match, location)) continue;
+            matched = true;
+            expandedIds.add(match.id());
+            if (request.getLastNameASC() == null && page.size() < request.getLimit()) page.add(match.id());
+        }
+        for (CollegeTypeaheadIndex.Entry match : matches) {
+            if (page.size() == request.getLimit()) break;
+            if (!inLocation(match, location) || expandedIds.contains(match.id())) continue;
+            matched = true;
+            if (request.getLastNameASC() != null && match.name().compareTo(request.getLastNameASC()) <= 0) continue;
+            page.add(match.id());
+        }
+        return matched ? page : null;
+    }
+
+    private static boolean inLocation(CollegeTypeaheadIndex.Entry match, String location) {
+        return location == null || (match.location() != null && match.location().toLowerCase(Locale.ROOT).contains(location));
+    }
+
+    // "MIT", "UCLA": initials that prefix-match unrelated names, the expansion has to place them
+    private static boolean looksLikeAcronym(String query) {
+        String trimmed = query.trim();
+        return trimmed.length() >= 2 && trimmed.length() <= 6 && trimmed.chars().allMatch(c -> c >= 'A' && c <= 'Z');
+    }
+
+    // one round trip for the page and its students, kept in the order of ids
+    private SearchedCollegesResponse findColleges(List<Integer> ids, int limit) {
+        if (ids.isEmpty()) return toResponse(List.of(), limit);
+
+        List<College> found = em.createQuery("SELECT DISTINCT c FROM College c LEFT JOIN FETCH c.students WHERE c.id IN :ids", College.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        Map<Integer, College> byId = new HashMap<>();
+        for (College college : found) {
+            byId.put(college.getId(), college);
+        }
+
+        List<College> colleges = new ArrayList<>();
+        for (Integer id : ids) {
+            // deleted since the index was built
+            College college = byId.get(id);
+            if (college != null) colleges.add(college);
+        }
+        return toResponse(colleges, limit);
+    }
+
+    private float[] embedSearchQuery(String searchQuery) {
+        CollegeQueryExpansionService.Expansion known = collegeQueryExpansionService.lookup(searchQuery);
+        if (known != null) {
+            return openAIService.generateQueryEmbedding(known.name() != null ? known.name() : searchQuery);
+        }
+        if (!collegeSearchProperties.isExpand()) {
+            return openAIService.generateQueryEmbedding(searchQuery);
+        }
+
+        String prompt = String.format(
+                "The user searched for: '%s'. " +
+                        "This might be an abbreviation or nickname for a college. " +
+                        "Provide the full official college name that matches this query. " +
+                        "If it's already a full name, return it as-is. " +
+                        "Examples: 'MIT' -> 'Massachusetts Institute of Technology', " +
+                        "'Georgia Tech' -> 'Georgia Institute of Technology', " +
+                        "'Harvard' -> 'Harvard University'. " +
+                        "Only respond with the college name, nothing else." +
+                        "If you are not sure, respond with the word 'NONE'.",
+                searchQuery.replace("\"", "\\\"") // Escape quotes
+        );
+
+        if (!collegeSearchProperties.isSpeculative()) {
             String refinedQuery = openAIService.generateFastCompletion(prompt);
+            if (refinedQuery != null) remember(searchQuery, refinedQuery);
+            return openAIService.generateQueryEmbedding(isExpansion(refinedQuery) ? refinedQuery : searchQuery);
+        }
+
+        // the raw query is embedded while the expansion runs, it is searched whenever the expansion can't be used
+        CompletableFuture<float[]> rawEmbedding = CompletableFuture.supplyAsync(() -> openAIService.generateQueryEmbedding(searchQuery), searchExecutor);
+        String refinedQuery = CompletableFuture.supplyAsync(() -> openAIService.generateFastCompletion(prompt), searchExecutor)
+                .completeOnTimeout(null, collegeSearchProperties.getExpansionTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .join();
+        // a timeout or failure says nothing about the query, so only answers are remembered
+        if (refinedQuery != null) remember(searchQuery, refinedQuery);
+
+        if (!isExpansion(refinedQuery) || refinedQuery.equalsIgnoreCase(searchQuery.trim())) {
+            return await(rawEmbedding);
+        }
+
+        CompletableFuture<float[]> refinedEmbedding = CompletableFuture.supplyAsync(() -> openAIService.generateQueryEmbedding(refinedQuery), searchExecutor);
+        try {
+            return await(refinedEmbedding);
+        } catch (UpstreamTimeoutException e) {
+            float[] fallback = rawEmbedding.getNow(null);
+            if (fallback == null) throw e;
+            return fallback;
+        }
+    }
+
+    private void remember(String searchQuery, String refinedQuery) {
+        searchExecutor.execute(() -> collegeQueryExpansionService.record(searchQuery, isExpansion(refinedQuery) ? refinedQuery : null));
+    }
+
+    private static boolean isExpansion(String refinedQuery) {
+        return refinedQuery != null && !refinedQuery.isBlank() && !refinedQuery.equalsIgnoreCase("NONE");
+    }
 
-            embedding = openAIService.generateEmbedding(refinedQuery);
-            embeddingObj = new Float[embedding.length];
-
-            float norm = 0f;
-            for (float f : embedding) {
-                norm += f * f;
-            }
-            norm = (float) Math.sqrt(norm);
-            if (norm > 0) {
-                for (int i = 0; i < embedding.length; i++) {
-                    embedding[i] /= norm;
-                }
-            }
-
-            for (int i = 0; i < embedding.length; i++) {
-                embeddingObj[i] = embedding[i];
-            }
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
-
-            sql.append("(c.embedding <=> '").append(embeddingLiteral).append("'::vector) AS distance ");
+    private float[] await(CompletableFuture<float[]> embedding) {
+        try {
+            return embedding.get(collegeSearchProperties.getEmbeddingTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new UpstreamTimeoutException("College search timed out, please try again");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamTimeoutException("College search was interrupted");
+        }
+    }
+
+    private SearchedCollegesResponse searchColleges(CollegeSearchRequest request, float[] embedding) {
+        StringBuilder sql = new StringBuilder();
+
+        if (embedding != null) {
+            setEfSearch(request.getEfSearch());
+
+            // a pure k-NN scan the HNSW index can serve, filters and sorting only run over its candidates
+            sql.append("WITH knn AS (");
+            sql.append("SELECT id, embedding <=> CAST(:embedding AS vector) AS distance ");
+            sql.append("FROM events.college ORDER BY distance LIMIT :candidates) ");
+            sql.append("SELECT ").append(COLLEGE_COLUMNS).append(" ");
+            sql.append("FROM knn JOIN events.college c ON c.id = knn.id WHERE 1=1 ");
         } else {
-            sql.append("NULL AS similarity ");
+            sql.append("SELECT ").append(COLLEGE_COLUMNS).append(" ");
+            sql.append("FROM events.college c WHERE 1=1 ");
         }
 
-        sql.append("FROM events.college c WHERE 1=1 ");
         if (request.getLocation() != null) {
             sql.append("AND LOWER(c.location) LIKE LOWER(CONCAT('%', :location, '%')) ");
         }
@@ -128,14 +274,11 @@ public class CollegeService {
 
         if (embedding != null) {
             float similarityThreshold = 0.9f;
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
             float distanceThreshold = 1 - similarityThreshold;
 
-            sql.append("AND (c.embedding <=> '").append(embeddingLiteral).append("'::vector <= ")
+            sql.append("AND knn.distance <= ")
                     .append(distanceThreshold)
-                    .append(") ");
+                    .append(" ");
         }
 
         sql.append("ORDER BY ");
@@ -146,10 +289,7 @@ public class CollegeService {
         }
 
         if (embedding != null) {
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
-            sql.append("(c.embedding <=> '").append(embeddingLiteral).append("'::vector) ASC, ");
+            sql.append("knn.distance ASC, ");
         }
         sql.append("c.id ASC ");
         sql.append("LIMIT :limit");
@@ -162,9 +302,17 @@ public class CollegeService {
         if (request.getLastNameASC() != null) {
             query.setParameter("name", request.getLastNameASC());
         }
+        if (embedding != null) {
+            bindVector(query, "embedding", embedding);
+            query.setParameter("candidates", vectorSearchProperties.getCandidates());
+        }
         query.setParameter("limit", request.getLimit());
 
         List<College> colleges = query.getResultList();
+        return toResponse(colleges, request.getLimit());
+    }
+
+    private SearchedCollegesResponse toResponse(List<College> colleges, int limit) {
         List<CollegeDTO> collegeDTOs = new ArrayList<>();
 
         for (College college : colleges) {
@@ -172,10 +320,10 @@ public class CollegeService {
         }
 
         SearchedCollegesResponse response;
-        if (colleges.size() == request.getLimit()) {
+        if (colleges.size() == limit) {
             response = new SearchedCollegesResponse(
                     collegeDTOs,
-                    colleges.get(request.getLimit() - 1).getName(),
+                    colleges.get(limit - 1).getName(),
                     true
             );
         } else {
@@ -189,90 +337,21 @@ public class CollegeService {
         return response;
     }
 
+    // resumes the last import, see CollegeImportService
     @Async
     public void scrapeColleges() {
-        final int PAGES = 1;
-        try {
-            for (int page = 0; page < 1; page++) {
-                String url = "https://api.data.gov/ed/collegescorecard/v1/schools?api_key=" + apiKey + "&page="+page+"&per_page=100&fields=id,school.name,school.school_url,latest.student.size,school.city,school.state";
-
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("Content-Type", "application/json");
-
-                HttpEntity<String> entity = new HttpEntity<>(headers);
-
-                ResponseEntity<JsonNode> response = restTemplate.exchange(url, HttpMethod.GET, entity, JsonNode.class);
-
-                JsonNode data = response.getBody().get("results");
-
-                for (int i = 0; i < data.size(); i++) {
-                    JsonNode info = data.get(i);
-
-                    String name = info.get("school.name") != null ? info.get("school.name").asText() : "";
-                    String location = info.get("school.city") != null && info.get("school.state") != null ? info.get("school.city").asText() + ", " + info.get("school.state").asText() : "";
-                    String thumbnail = null;
-
-                    String textForEmbedding = name + name + name;
-                    float[] embedding = openAIService.generateEmbedding(textForEmbedding);
-                    float norm = 0f;
-                    for (float f : embedding) {
-                        norm += f * f;
-                    }
-                    norm = (float) Math.sqrt(norm);
-
-                    if (norm > 0) {
-                        for (int j = 0; j < embedding.length; j++) {
-                            embedding[j] /= norm;
-                        }
-                    }
-
-                    StringBuilder sb = new StringBuilder("[");
-                    for (int j = 0; j < embedding.length; j++) {
-                        sb.append(embedding[j]);
-                        if (j < embedding.length - 1) {
-                            sb.append(",");
-                        }
-                    }
-                    sb.append("]");
-                    String embeddingLiteral = sb.toString();
-
-                    if (info.get("school.school_url") != null) {
-                        String extractedUrl = extractDomain(info.get("school.school_url").asText());
-
-                        System.out.println("School name: " + info.get("school.name").asText());
-                        System.out.println("Extracted school url: " + extractedUrl);
-
-                        thumbnail = "https://img.logo.dev/" + extractedUrl + "?token=" + imageApiKey;
-                    }
-
-                    College college = new College();
-                    college.setEmbedding(embedding);
-                    college.setName(name);
-                    college.setLocation(location);
-                    college.setThumbnail(thumbnail);
-                    // default image url: "https://uniacco-blog-assets.gumlet.io/blog/wp-content/uploads/2024/04/13162649/college-vs-university-scaled.webp"
-
-                    String sql = String.format("""
-                        INSERT INTO events.college (
-                            name, location, thumbnail, embedding
-                        )
-                        VALUES (
-                            :name, :location, :thumbnail, '%s'::vector
-                        )
-                        RETURNING id
-                        """, embeddingLiteral);
-
-                    Integer generatedId = (Integer) em.createNativeQuery(sql)
-                            .setParameter("name", college.getName())
-                            .setParameter("location", college.getLocation())
-                            .setParameter("thumbnail", college.getThumbnail())
-                            .getSingleResult();
-
-                    college.setId(generatedId);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Failed to scrape colleges ", e);
-        }
+        collegeImportService.importColleges(false);
+    }
+
+    @PreDestroy
+    public void close() {
+        searchExecutor.close();
+    }
+
+    // SET LOCAL for the current transaction, so it has to run inside the search's transaction
+    private void setEfSearch(Integer requested) {
+        em.createNativeQuery("SELECT set_config('hnsw.ef_search', :efSearch, true)")
+                .setParameter("efSearch", String.valueOf(vectorSearchProperties.efSearchFor(requested)))
+                .getSingleResult();
     }
 }
@@ -0,0 +1,113 @@
+package com.unihub.app.service;
+
+import com.unihub.app.model.College;
+import com.unihub.app.util.PrefixIndex;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Name and location words of every college held in memory, so typed prefixes are matched
+ * without the completion, the embedding or the vector scan. Built at startup, colleges saved
+ * through CollegeService are added as they commit.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CollegeTypeaheadIndex {
+    @Autowired
+    private EntityManager em;
+
+    private final PlatformTransactionManager transactionManager;
+
+    public record Entry(Integer id, String name, String location) {}
+
+    // search results come back in this order, the same as the SQL search's
+    private static final Comparator<Entry> NAME_ORDER = Comparator.comparing(Entry::name).thenComparing(Entry::id);
+
+    private volatile List<Entry> entries = List.of();
+    private volatile PrefixIndex<Entry> index;
+    // lowercased names, for the exact name a query expands to
+    private volatile Map<String, List<Entry>> byName = Map.of();
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @SuppressWarnings("unchecked")
+    public void load() {
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT id, name, location FROM events.college").getResultList());
+
+        List<Entry> loaded = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            loaded.add(new Entry((Integer) row[0], (String) row[1], (String) row[2]));
+        }
+        rebuild(loaded);
+        log.info("Indexed {} college names for typeahead in {} ms", loaded.size(), System.currentTimeMillis() - start);
+    }
+
+    /** Colleges matching every typed word, in name order, or null before the index is loaded. */
+    public List<Entry> search(String query) {
+        PrefixIndex<Entry> current = index;
+        return current != null ? current.search(query) : null;
+    }
+
+    /** Colleges with exactly this name ignoring case, or null before the index is loaded. */
+    public List<Entry> findByName(String name) {
+        if (index == null) return null;
+        return byName.getOrDefault(name.toLowerCase(Locale.ROOT), List.of());
+    }
+
+    /** Adds the college once the surrounding transaction commits, or right away when there is none. */
+    public void add(College college) {
+        Entry entry = new Entry(college.getId(), college.getName(), college.getLocation());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(entry);
+                }
+            });
+        } else {
+            add(entry);
+        }
+    }
+
+    // colleges are rarely added, so the index is simply rebuilt
+    private synchronized void add(Entry entry) {
+        if (index == null) return;
+        List<Entry> updated = new ArrayList<>(entries);
+        updated.removeIf(existing -> existing.id().equals(entry.id()));
+        updated.add(entry);
+        rebuild(updated);
+    }
+
+    private synchronized void rebuild(List<Entry> updated) {
+        updated.sort(NAME_ORDER);
+        entries = updated;
+        Map<String, List<Entry>> names = new HashMap<>();
+        for (Entry entry : updated) {
+            if (entry.name() != null) names.computeIfAbsent(entry.name().toLowerCase(Locale.ROOT), name -> new ArrayList<>()).add(entry);
+        }
+        byName = names;
+        // colleges saved without a location mustn't match "null"
+        index = new PrefixIndex<>(updated, entry -> Stream.of(entry.name(), entry.location())
+                .filter(Objects::nonNull)
+                .collect(Collectors.joining(" ")));
+    }
+}
@@ -10,6 +10,8 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -36,6 +38,25 @@ public class EmailService {
         }
     }
 
+    /** Sends every email over one connection to the mail server. */
+    public void sendSimpleEmails(List<EmailDTO> emails) {
+        SimpleMailMessage[] mailMessages = new SimpleMailMessage[emails.size()];
+        for (int i = 0; i < emails.size(); i++) {
+            SimpleMailMessage mailMessage = new SimpleMailMessage();
+            mailMessage.setFrom(sender);
+            mailMessage.setTo(emails.get(i).getRecipient());
+            mailMessage.setText(emails.get(i).getMessageBody());
+            mailMessage.setSubject(emails.get(i).getSubject());
+            mailMessages[i] = mailMessage;
+        }
+
+        try {
+            javaMailSender.send(mailMessages);
+        } catch (Exception e) {
+            log.error("Failed to send {} emails", emails.size(), e);
+        }
+    }
+
     @Async
     public void sendSimpleEmailAsync(EmailDTO email) {
         try {
@@ -0,0 +1,20 @@
+package com.unihub.app.service;
+
+import java.util.List;
+
+/**
+ * Turns texts into embeddings. embedding.provider picks the implementation: openai (the
+ * default) or hashing, which runs in process without the network. Vectors of different
+ * providers are not comparable, so stored event and college embeddings have to be regenerated
+ * after switching.
+ */
+public interface EmbeddingProvider {
+    /** Identifies the vectors this provider makes, cached and stored embeddings are keyed by it. */
+    String model();
+
+    /** One embedding per text, in the order given. */
+    List<float[]> embed(List<String> texts);
+
+    /** Whether a call leaves the process, so batching concurrent calls pays off. */
+    boolean isRemote();
+}
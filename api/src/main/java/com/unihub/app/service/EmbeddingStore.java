@@ -0,0 +1,318 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EmbeddingStoreProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of raw embeddings so restarts don't pay for every embedding again.
+ *
+ * <p>Layout: a 16 byte header (magic + dimensions) followed by fixed-width records of
+ * {@code sha256(model + '\0' + text)}, the vector as little-endian floats and a CRC32C of both.
+ * Only the digests are read at startup to rebuild the in-memory index, vectors are read
+ * straight out of memory-mapped segments on lookup. A crash can only tear the last record,
+ * which is detected by its length or checksum and truncated on the next open.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingStore {
+    private static final long MAGIC = 0x554e494855424531L; // "UNIHUBE1"
+    private static final int HEADER_BYTES = 16;
+    private static final int DIGEST_BYTES = 32;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int SEGMENT_RECORDS = 4096;
+
+    private final EmbeddingStoreProperties properties;
+
+    private final Map<Digest, Integer> index = new ConcurrentHashMap<>();
+    private final Map<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    // lookups read mapped segments without the monitor, compact and close swap them under the write lock;
+    // taken before the monitor, never inside it
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private int recordBytes;
+    private int recordCount;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!properties.isEnabled()) return;
+
+        recordBytes = DIGEST_BYTES + properties.getDimensions() * Float.BYTES + CHECKSUM_BYTES;
+        Path path = Path.of(properties.getPath());
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+
+        long start = System.nanoTime();
+        load(path);
+        log.info("Loaded {} stored embeddings from {} in {} ms", index.size(), path, (System.nanoTime() - start) / 1_000_000);
+
+        int wasted = recordCount - index.size();
+        if (recordCount > 0 && wasted > recordCount * properties.getCompactThreshold()) {
+            compact();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        segmentsLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+                segments.clear();
+                index.clear();
+            }
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns a copy of the stored embedding or null if this text has not been embedded with this model.
+     */
+    public float[] get(String model, String text) {
+        if (!properties.isEnabled()) return null;
+
+        Digest digest = digest(model, text);
+        segmentsLock.readLock().lock();
+        try {
+            Integer slot = index.get(digest);
+            if (slot == null) return null;
+
+            ByteBuffer record = record(slot);
+            if (!digest.matches(record) || !checksumMatches(record)) {
+                log.warn("Stored embedding in slot {} is corrupt, ignoring it", slot);
+                index.remove(digest, slot);
+                return null;
+            }
+
+            float[] embedding = new float[properties.getDimensions()];
+            record.position(DIGEST_BYTES);
+            record.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+            return embedding;
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the embedding unless it is already stored. A failed write is only logged, the caller
+     * already has the embedding and it is fetched again the next time.
+     */
+    public synchronized void put(String model, String text, float[] embedding) {
+        if (!properties.isEnabled() || channel == null) return;
+        if (embedding.length != properties.getDimensions()) {
+            log.warn("Not storing {}-dimension embedding in a {}-dimension store", embedding.length, properties.getDimensions());
+            return;
+        }
+
+        Digest digest = digest(model, text);
+        if (index.containsKey(digest)) return;
+
+        ByteBuffer record = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        digest.writeTo(record);
+        record.asFloatBuffer().put(embedding);
+        record.position(recordBytes - CHECKSUM_BYTES);
+        record.putInt(checksum(record));
+        record.flip();
+
+        try {
+            long position = offset(recordCount);
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            if (properties.isFsync()) channel.force(false);
+        } catch (IOException e) {
+            // a partial record is overwritten by the next append, or truncated as torn on open
+            log.warn("Failed to append embedding to store", e);
+            return;
+        }
+
+        index.put(digest, recordCount++);
+    }
+
+    /**
+     * Rewrites the store without duplicate or corrupt records and swaps it in atomically.
+     */
+    public void compact() throws IOException {
+        segmentsLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                compactLocked();
+            }
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        if (!properties.isEnabled() || channel == null) return;
+
+        Path path = Path.of(properties.getPath());
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        int before = recordCount;
+
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(header());
+            Set<Digest> written = new HashSet<>();
+            for (int slot = 0; slot < recordCount; slot++) {
+                ByteBuffer record = record(slot);
+                Digest digest = Digest.read(record);
+                if (!slot(digest, slot) || !checksumMatches(record) || !written.add(digest)) continue;
+
+                record.position(0);
+                while (record.hasRemaining()) out.write(record);
+            }
+            out.force(true);
+        }
+
+        close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        load(path);
+        log.info("Compacted embedding store from {} to {} records", before, recordCount);
+    }
+
+    private boolean slot(Digest digest, int slot) {
+        Integer indexed = index.get(digest);
+        return indexed != null && indexed == slot;
+    }
+
+    private synchronized void load(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() < HEADER_BYTES) {
+            channel.truncate(0);
+            channel.write(header(), 0);
+            channel.force(true);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getLong() != MAGIC || header.getInt() != properties.getDimensions()) {
+                throw new IllegalStateException("Embedding store " + path + " has an unexpected format or dimension count");
+            }
+        }
+
+        recordCount = (int) ((channel.size() - HEADER_BYTES) / recordBytes);
+        // only the record being appended during a crash can be torn, drop it along with any partial bytes
+        if (recordCount > 0 && !checksumMatches(record(recordCount - 1))) {
+            log.warn("Dropping torn record at the end of the embedding store");
+            recordCount--;
+        }
+        if (channel.size() != offset(recordCount)) {
+            channel.truncate(offset(recordCount));
+            segments.clear();
+        }
+
+        index.clear();
+        for (int slot = 0; slot < recordCount; slot++) {
+            index.put(Digest.read(record(slot)), slot);
+        }
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(properties.getDimensions()).putInt(0);
+        return header.flip();
+    }
+
+    private long offset(int slot) {
+        return HEADER_BYTES + (long) slot * recordBytes;
+    }
+
+    // a view over one record, remapping its segment if the record was appended after the segment was mapped
+    private ByteBuffer record(int slot) {
+        int segmentIndex = slot / SEGMENT_RECORDS;
+        int slotInSegment = slot % SEGMENT_RECORDS;
+
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        if (segment == null || segment.capacity() < (slotInSegment + 1) * recordBytes) {
+            segment = mapSegment(segmentIndex);
+        }
+
+        return segment.slice(slotInSegment * recordBytes, recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(int segmentIndex) {
+        try {
+            long start = offset(segmentIndex * SEGMENT_RECORDS);
+            long length = Math.min((long) SEGMENT_RECORDS * recordBytes, channel.size() - start);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            segments.put(segmentIndex, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map embedding store segment", e);
+        }
+    }
+
+    private boolean checksumMatches(ByteBuffer record) {
+        return checksum(record) == record.getInt(recordBytes - CHECKSUM_BYTES);
+    }
+
+    private int checksum(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.slice(0, recordBytes - CHECKSUM_BYTES));
+        return (int) crc.getValue();
+    }
+
+    private static Digest digest(String model, String text) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(model.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            return Digest.read(ByteBuffer.wrap(sha.digest(text.getBytes(StandardCharsets.UTF_8))).order(ByteOrder.LITTLE_ENDIAN));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Digest(long a, long b, long c, long d) {
+        static Digest read(ByteBuffer buffer) {
+            return new Digest(buffer.getLong(0), buffer.getLong(8), buffer.getLong(16), buffer.getLong(24));
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.putLong(0, a).putLong(8, b).putLong(16, c).putLong(24, d);
+            buffer.position(DIGEST_BYTES);
+        }
+
+        boolean matches(ByteBuffer record) {
+            return equals(read(record));
+        }
+    }
+}
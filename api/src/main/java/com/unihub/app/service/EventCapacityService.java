@@ -0,0 +1,256 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventCapacityProperties;
+import com.unihub.app.exception.CapacityLimitReachedException;
+import com.unihub.app.exception.EventNotFoundException;
+import com.unihub.app.util.CapacityCounter;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Admits registrations against event capacity. Seats are first taken from an in-memory counter
+ * per event, so once an event is full further RSVPs are turned away without a query or a row
+ * lock. The conditional UPDATE that then books them keeps num_attendees within capacity whatever
+ * other instances admitted; a counter that let too many through is resynced from it. New RSVPs
+ * are only admitted while nobody is on the event's waitlist, seats given back while there is one
+ * are left to WaitlistService.
+ *
+ * <p>With events.capacity.write-behind.enabled the counter is the check: booking and releasing
+ * seats only hand the change to AttendeeCountBuffer once the transaction commits, which writes
+ * num_attendees for many RSVPs at once. That is only safe with one instance admitting RSVPs. A
+ * counter is never replaced, only resynced, so seats it holds for transactions in flight are
+ * never forgotten.
+ *
+ * <p>Every method has to run inside the transaction that writes the registration.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventCapacityService {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private AttendeeCountBuffer attendeeCountBuffer;
+    @Autowired
+    private EventCapacityProperties properties;
+
+    private final Map<Integer, CapacityCounter> counters = new ConcurrentHashMap<>();
+
+    private static final String BOOK_SQL = """
+            UPDATE events.event
+            SET num_attendees = num_attendees + ?
+            WHERE id = ? AND num_attendees + ? <= capacity
+            RETURNING id
+            """;
+
+    /** Holds seats until the transaction ends, or throws when the event can't fit them. */
+    public void reserve(Integer eventId, int tickets) {
+        if (!tryReserve(eventId, tickets)) throw full(counterFor(eventId));
+    }
+
+    /** tryReserve for a new RSVP, which has to join the waitlist while anyone is on it. */
+    public boolean tryAdmit(Integer eventId, int tickets) {
+        return counterFor(eventId).waitlisted() == 0 && tryReserve(eventId, tickets);
+    }
+
+    /** Holds seats until the transaction ends, if the event can fit them. */
+    public boolean tryReserve(Integer eventId, int tickets) {
+        CapacityCounter counter = counterFor(eventId);
+        if (!counter.tryReserve(tickets) && (isFresh(counter) || !resync(eventId, counter).tryReserve(tickets))) {
+            return false;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    counter.confirm(tickets);
+                } else {
+                    counter.cancel(tickets);
+                }
+            }
+        });
+        return true;
+    }
+
+    /** Throws when the event can't fit the seats, without holding them. */
+    public void checkRoom(Integer eventId, int tickets) {
+        CapacityCounter counter = counterFor(eventId);
+        if (counter.remaining() < tickets && (isFresh(counter) || resync(eventId, counter).remaining() < tickets)) {
+            throw full(counter);
+        }
+    }
+
+    /**
+     * Adds reserved seats to num_attendees, only if they fit. Runs last in the transaction, the
+     * row stays locked until it commits.
+     */
+    public void book(Integer eventId, int tickets) {
+        if (!tryBook(eventId, tickets)) throw full(counterFor(eventId));
+    }
+
+    /**
+     * Adds reserved seats to num_attendees if they fit. When they don't, the counter let too
+     * many through and is expired, the next RSVP reads the event's count again.
+     */
+    public boolean tryBook(Integer eventId, int tickets) {
+        return em.unwrap(Session.class).doReturningWork(connection -> tryBook(connection, eventId, tickets));
+    }
+
+    /** tryBook on the transaction's own connection, for callers already working with JDBC. */
+    public boolean tryBook(Connection connection, Integer eventId, int tickets) throws SQLException {
+        if (attendeeCountBuffer.isEnabled()) {
+            afterCommit(() -> attendeeCountBuffer.add(eventId, tickets));
+            return true;
+        }
+
+        try (PreparedStatement book = connection.prepareStatement(BOOK_SQL)) {
+            book.setInt(1, tickets);
+            book.setInt(2, eventId);
+            book.setInt(3, tickets);
+            try (ResultSet rs = book.executeQuery()) {
+                if (rs.next()) return true;
+            }
+        }
+
+        log.info("Capacity counter of event {} admitted more than the database holds, reloading it", eventId);
+        CapacityCounter counter = counters.get(eventId);
+        if (counter != null) counter.expire();
+        return false;
+    }
+
+    /** Takes seats off num_attendees, the counter gets them back once the transaction commits. */
+    public void release(Integer eventId, int tickets) {
+        if (attendeeCountBuffer.isEnabled()) {
+            afterCommit(() -> attendeeCountBuffer.add(eventId, -tickets));
+        } else {
+            em.createNativeQuery("""
+                    UPDATE events.event
+                    SET num_attendees = num_attendees - :tickets
+                    WHERE id = :eventId
+                    """)
+                    .setParameter("tickets", tickets)
+                    .setParameter("eventId", eventId)
+                    .executeUpdate();
+        }
+
+        // a counter loaded after this reads the seats from the database instead
+        CapacityCounter counter = counters.get(eventId);
+        if (counter == null) return;
+        counter.releasing(tickets);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    counter.free(tickets);
+                } else {
+                    counter.keep(tickets);
+                }
+            }
+        });
+    }
+
+    /** Keeps new RSVPs off the event's free seats once a waitlisted registration commits. */
+    public void joinedWaitlist(Integer eventId) {
+        afterCommit(() -> counterFor(eventId).joinedWaitlist());
+    }
+
+    /** Whether the event has seats left for the head of its waitlist. */
+    public boolean hasFreeSeats(Integer eventId) {
+        return counterFor(eventId).remaining() > 0;
+    }
+
+    /** Registrations waitlisted on this instance since the line was last drained. */
+    public int waitlisted(Integer eventId) {
+        CapacityCounter counter = counters.get(eventId);
+        return counter == null ? 0 : counter.waitlisted();
+    }
+
+    /** Admits new RSVPs again, unless someone joined the waitlist after {@code seen} was read. */
+    public void drainedWaitlist(Integer eventId, int seen) {
+        CapacityCounter counter = counters.get(eventId);
+        if (counter != null) counter.drainedWaitlist(seen);
+    }
+
+    /** Expires the counter once the transaction commits, after the capacity itself changed. */
+    public void invalidate(Integer eventId) {
+        afterCommit(() -> {
+            CapacityCounter counter = counters.get(eventId);
+            if (counter != null) counter.expire();
+        });
+    }
+
+    private CapacityCounter counterFor(Integer eventId) {
+        CapacityCounter counter = counters.get(eventId);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(eventId, id -> {
+                Seats seats = findFreeSeats(id);
+                CapacityCounter loaded = new CapacityCounter(seats.free());
+                if (seats.waitlist()) loaded.joinedWaitlist();
+                return loaded;
+            });
+        }
+        return counter.isExpired() ? resync(eventId, counter) : counter;
+    }
+
+    private CapacityCounter resync(Integer eventId, CapacityCounter counter) {
+        long mark = counter.syncMark();
+        Seats seats = findFreeSeats(eventId);
+        counter.resync(seats.free(), mark);
+        // only the promoter drains the line, a waitlist seen in the database keeps it
+        if (seats.waitlist() && counter.waitlisted() == 0) counter.joinedWaitlist();
+        return counter;
+    }
+
+    private boolean isFresh(CapacityCounter counter) {
+        return counter.syncedWithin(properties.getResyncInterval().toNanos());
+    }
+
+    private record Seats(int free, boolean waitlist) {}
+
+    @SuppressWarnings("unchecked")
+    private Seats findFreeSeats(Integer eventId) {
+        // read first: a flush in between then counts its seats twice, rather than not at all
+        int pending = attendeeCountBuffer.pending(eventId);
+        List<Object[]> rows = em.createNativeQuery("""
+                SELECT e.capacity - e.num_attendees,
+                       EXISTS (SELECT 1 FROM events.registration r WHERE r.event_id = e.id AND r.status = 'WAITLISTED')
+                FROM events.event e
+                WHERE e.id = :eventId
+                """)
+                .setParameter("eventId", eventId)
+                .getResultList();
+        if (rows.isEmpty()) throw new EventNotFoundException("Event not found");
+        Object[] row = rows.get(0);
+        return new Seats(((Number) row[0]).intValue() - pending, (Boolean) row[1]);
+    }
+
+    private static CapacityLimitReachedException full(CapacityCounter counter) {
+        return counter.remaining() <= 0
+                ? new CapacityLimitReachedException("Event is at full capacity")
+                : new CapacityLimitReachedException("Event does not have enough capacity for the number of tickets you requested");
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,344 @@
+package com.unihub.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.unihub.app.EventImportProperties;
+import com.unihub.app.dto.request.ImportEventRequest;
+import com.unihub.app.dto.response.EventImportError;
+import com.unihub.app.dto.response.EventImportResponse;
+import com.unihub.app.exception.ImportTooLargeException;
+import com.unihub.app.exception.UnsupportedMediaTypeException;
+import com.unihub.app.model.Event;
+import com.unihub.app.util.CsvReader;
+import com.unihub.app.util.VectorCodec;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static com.unihub.app.util.VectorOperations.normalize;
+
+/**
+ * Bulk loads events from NDJSON or CSV (with a header row naming the fields of
+ * ImportEventRequest). Every row is checked before anything is written, so a bad row is reported
+ * back instead of aborting the COPY the good ones are loaded with, in one transaction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventImportService {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private OpenAIService openAIService;
+    @Autowired
+    private EventVectorIndex eventVectorIndex;
+    @Autowired
+    private EventRecommendationService eventRecommendationService;
+    @Autowired
+    private EventImportProperties properties;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private static final String COPY_SQL = """
+            COPY events.event (
+                id, name, type, description, location, capacity, image,
+                num_attendees, event_start_date_utc, event_end_date_utc,
+                event_timezone, creator_user_id, max_tickets, requires_approval, approval_success_message, embedding
+            )
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    private record Row(int number, ImportEventRequest request) {}
+
+    private record Parsed(int received, List<Row> rows) {}
+
+    public EventImportResponse importEvents(InputStream body, String contentType) throws IOException {
+        long start = System.currentTimeMillis();
+        List<EventImportError> errors = new ArrayList<>();
+        Parsed parsed = read(body, contentType, errors);
+
+        List<Row> valid = validate(parsed.rows(), errors);
+        List<Event> events = new ArrayList<>(valid.size());
+        List<Integer> creatorIds = new ArrayList<>(valid.size());
+        for (Row row : valid) {
+            events.add(toEvent(row.request()));
+            creatorIds.add(row.request().getCreatorId());
+        }
+
+        // embedded before the transaction, which then only holds a connection for the COPY
+        List<float[]> embeddings = embed(events);
+        List<Integer> ids = events.isEmpty() ? List.of() : new TransactionTemplate(transactionManager).execute(status ->
+                em.unwrap(Session.class).doReturningWork(connection -> copy(connection, events, creatorIds, embeddings)));
+
+        for (int i = 0; i < ids.size(); i++) {
+            eventVectorIndex.upsert(ids.get(i), embeddings.get(i));
+        }
+        if (ids.size() <= properties.getRefreshAroundMaxRows()) {
+            ids.forEach(eventRecommendationService::refreshAround);
+        } else if (!ids.isEmpty()) {
+            eventRecommendationService.rebuildAsync();
+        }
+
+        errors.sort(Comparator.comparingInt(EventImportError::getRow));
+        log.info("Imported {} of {} events in {} ms, {} rows rejected",
+                ids.size(), parsed.received(), System.currentTimeMillis() - start, errors.size());
+        return new EventImportResponse(parsed.received(), ids.size(), ids, errors);
+    }
+
+    private Parsed read(InputStream body, String contentType, List<EventImportError> errors) throws IOException {
+        MediaType type;
+        try {
+            type = MediaType.parseMediaType(contentType);
+        } catch (RuntimeException e) {
+            throw new UnsupportedMediaTypeException("Events are imported from application/x-ndjson or text/csv");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, type.getCharset() != null ? type.getCharset() : StandardCharsets.UTF_8));
+
+        if (type.isCompatibleWith(NDJSON)) return readNdjson(reader, errors);
+        if (type.isCompatibleWith(CSV)) return readCsv(new CsvReader(reader), errors);
+        throw new UnsupportedMediaTypeException("Events are imported from application/x-ndjson or text/csv, not " + type);
+    }
+
+    private Parsed readNdjson(BufferedReader reader, List<EventImportError> errors) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        int number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            checkSize(++number);
+            try {
+                rows.add(new Row(number, convert(objectMapper.readTree(line))));
+            } catch (JsonProcessingException e) {
+                errors.add(new EventImportError(number, "Malformed JSON: " + e.getOriginalMessage()));
+            } catch (IllegalArgumentException e) {
+                errors.add(new EventImportError(number, e.getMessage()));
+            }
+        }
+        return new Parsed(number, rows);
+    }
+
+    private Parsed readCsv(CsvReader reader, List<EventImportError> errors) throws IOException {
+        List<String> header = reader.next();
+        if (header == null) return new Parsed(0, List.of());
+
+        List<Row> rows = new ArrayList<>();
+        int number = 0;
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            if (record.stream().allMatch(Objects::isNull)) continue;
+            checkSize(++number);
+            if (record.size() != header.size()) {
+                errors.add(new EventImportError(number, "Has " + record.size() + " fields, the header has " + header.size()));
+                continue;
+            }
+
+            ObjectNode fields = objectMapper.createObjectNode();
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i) != null && record.get(i) != null) fields.put(header.get(i).trim(), record.get(i));
+            }
+            try {
+                rows.add(new Row(number, convert(fields)));
+            } catch (IllegalArgumentException e) {
+                errors.add(new EventImportError(number, e.getMessage()));
+            }
+        }
+        return new Parsed(number, rows);
+    }
+
+    private void checkSize(int rows) {
+        if (rows > properties.getMaxRows()) {
+            throw new ImportTooLargeException("An import holds at most " + properties.getMaxRows() + " events");
+        }
+    }
+
+    private ImportEventRequest convert(JsonNode fields) {
+        try {
+            return objectMapper.treeToValue(fields, ImportEventRequest.class);
+        } catch (JsonMappingException e) {
+            String field = e.getPath().isEmpty() ? null : e.getPath().get(e.getPath().size() - 1).getFieldName();
+            throw new IllegalArgumentException(field != null ? "Invalid value for " + field : "Not an event: " + e.getOriginalMessage());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Not an event: " + e.getOriginalMessage());
+        }
+    }
+
+    // whatever COPY would reject is caught here, so one row can't abort the rest
+    private List<Row> validate(List<Row> rows, List<EventImportError> errors) {
+        Set<Integer> creators = findExistingUsers(rows.stream()
+                .map(row -> row.request().getCreatorId()).filter(Objects::nonNull).distinct().toList());
+
+        List<Row> valid = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            String problem = problemWith(row.request(), creators);
+            if (problem != null) {
+                errors.add(new EventImportError(row.number(), problem));
+            } else {
+                valid.add(row);
+            }
+        }
+        return valid;
+    }
+
+    private static String problemWith(ImportEventRequest request, Set<Integer> creators) {
+        Map<String, Object> required = new LinkedHashMap<>();
+        required.put("name", request.getName());
+        required.put("type", request.getType());
+        required.put("location", request.getLocation());
+        required.put("capacity", request.getCapacity());
+        required.put("eventStartDateUtc", request.getEventStartDateUtc());
+        required.put("eventEndDateUtc", request.getEventEndDateUtc());
+        required.put("eventTimezone", request.getEventTimezone());
+        for (Map.Entry<String, Object> field : required.entrySet()) {
+            if (field.getValue() == null || field.getValue() instanceof String text && text.isBlank()) {
+                return field.getKey() + " is required";
+            }
+        }
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        texts.put("name", request.getName());
+        texts.put("type", request.getType());
+        texts.put("description", request.getDescription());
+        texts.put("location", request.getLocation());
+        texts.put("image", request.getImage());
+        texts.put("eventTimezone", request.getEventTimezone());
+        texts.put("approvalSuccessMessage", request.getApprovalSuccessMessage());
+        for (Map.Entry<String, String> field : texts.entrySet()) {
+            String text = field.getValue();
+            if (text == null) continue;
+            if (text.length() > MAX_TEXT_LENGTH) return field.getKey() + " is longer than " + MAX_TEXT_LENGTH + " characters";
+            if (text.indexOf('\0') >= 0) return field.getKey() + " contains a NUL character";
+        }
+
+        if (request.getCapacity() < 0) return "capacity can't be negative";
+        if (request.getMaxTickets() != null && request.getMaxTickets() < 1) return "maxTickets has to be at least 1";
+        if (request.getEventEndDateUtc().isBefore(request.getEventStartDateUtc())) return "eventEndDateUtc is before eventStartDateUtc";
+        if (request.getCreatorId() != null && !creators.contains(request.getCreatorId())) {
+            return "Creator " + request.getCreatorId() + " doesn't exist";
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Integer> findExistingUsers(List<Integer> userIds) {
+        if (userIds.isEmpty()) return Set.of();
+        List<Integer> existing = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT id FROM events.app_user WHERE id IN (:ids)")
+                        .setParameter("ids", userIds)
+                        .getResultList());
+        return new HashSet<>(existing);
+    }
+
+    private static Event toEvent(ImportEventRequest request) {
+        Event event = new Event();
+        event.setName(request.getName());
+        event.setType(request.getType());
+        event.setDescription(request.getDescription());
+        event.setLocation(request.getLocation());
+        event.setCapacity(request.getCapacity());
+        event.setImage(request.getImage());
+        event.setEventStartDateUtc(request.getEventStartDateUtc());
+        event.setEventEndDateUtc(request.getEventEndDateUtc());
+        event.setEventTimezone(request.getEventTimezone());
+        event.setMaxTickets(request.getMaxTickets() != null ? request.getMaxTickets() : 1);
+        event.setRequiresApproval(Boolean.TRUE.equals(request.getRequiresApproval()));
+        event.setApprovalSuccessMessage(request.getApprovalSuccessMessage());
+        return event;
+    }
+
+    private List<float[]> embed(List<Event> events) {
+        List<float[]> embeddings = new ArrayList<>(events.size());
+        for (int from = 0; from < events.size(); from += properties.getEmbeddingBatchSize()) {
+            List<Event> batch = events.subList(from, Math.min(events.size(), from + properties.getEmbeddingBatchSize()));
+            for (float[] embedding : openAIService.generateEmbeddings(batch.stream().map(EventService::embeddingText).toList())) {
+                embeddings.add(normalize(embedding));
+            }
+        }
+        return embeddings;
+    }
+
+    private List<Integer> copy(Connection connection, List<Event> events, List<Integer> creatorIds, List<float[]> embeddings) throws SQLException {
+        // ids are taken up front so the vector index and recommendations can be told about the rows
+        List<Integer> ids = new ArrayList<>(events.size());
+        try (PreparedStatement allocate = connection.prepareStatement(
+                "SELECT nextval(pg_get_serial_sequence('events.event', 'id')) FROM generate_series(1, ?)")) {
+            allocate.setInt(1, events.size());
+            try (ResultSet rs = allocate.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+        try {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < events.size(); i++) {
+                Event event = events.get(i);
+                line.setLength(0);
+                line.append(ids.get(i)).append(',');
+                text(line, event.getName()).append(',');
+                text(line, event.getType()).append(',');
+                text(line, event.getDescription()).append(',');
+                text(line, event.getLocation()).append(',');
+                line.append(event.getCapacity()).append(',');
+                text(line, event.getImage()).append(',');
+                line.append(0).append(',');
+                line.append(event.getEventStartDateUtc()).append(',');
+                line.append(event.getEventEndDateUtc()).append(',');
+                text(line, event.getEventTimezone()).append(',');
+                if (creatorIds.get(i) != null) line.append(creatorIds.get(i));
+                line.append(',');
+                line.append(event.getMaxTickets()).append(',');
+                line.append(event.isRequiresApproval()).append(',');
+                text(line, event.getApprovalSuccessMessage()).append(',');
+                text(line, VectorCodec.format(embeddings.get(i))).append('\n');
+
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                copy.writeToCopy(bytes, 0, bytes.length);
+            }
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) copy.cancelCopy();
+        }
+        return ids;
+    }
+
+    // null stays an unquoted empty field, which COPY's csv format reads as NULL
+    private static StringBuilder text(StringBuilder line, String value) {
+        if (value == null) return line;
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+}
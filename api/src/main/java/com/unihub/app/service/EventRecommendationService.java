@@ -0,0 +1,177 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventRecommendationProperties;
+import com.unihub.app.VectorSearchProperties;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Keeps events.event_recommendation, the nearest neighbours of every event, so the recommended
+ * events endpoint is a primary key lookup. Lists are recomputed around an event after it is
+ * created or re-embedded, and all of them by a nightly rebuild. events.event_recommendation_list
+ * records which lists have been computed, empty ones included.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventRecommendationService {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private EventRecommendationProperties properties;
+    @Autowired
+    private VectorSearchProperties vectorSearchProperties;
+
+    private final PlatformTransactionManager transactionManager;
+
+    // first key of pg_advisory_xact_lock(int, int), the second is the event id
+    private static final int LOCK_SPACE = 8;
+
+    /**
+     * Recomputes the event's own list, the lists it now belongs in and the lists it was in
+     * before, each in its own transaction.
+     */
+    @Async
+    public void refreshAround(Integer eventId) {
+        TreeSet<Integer> affected = new TreeSet<>(findListsContaining(eventId));
+        refresh(eventId);
+        affected.addAll(findListsToJoin(eventId));
+        affected.remove(eventId);
+
+        for (Integer affectedId : affected) {
+            refresh(affectedId);
+        }
+        log.info("Refreshed recommendations around event {} and {} neighbours", eventId, affected.size());
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        boolean empty = new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT 1 FROM events.event_recommendation_list LIMIT 1").getResultList().isEmpty());
+        if (empty) rebuild();
+    }
+
+    /** Rebuilds every list in the background, after imports too large to refresh around each event. */
+    @Async
+    public void rebuildAsync() {
+        rebuild();
+    }
+
+    @Scheduled(cron = "${search.recommendations.rebuild-cron:0 0 4 * * *}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int refreshed = 0;
+        int afterId = 0;
+        List<Integer> page;
+        do {
+            page = findEventIdsAfter(afterId);
+            for (Integer eventId : page) {
+                refresh(eventId);
+                afterId = eventId;
+                refreshed++;
+            }
+        } while (!page.isEmpty());
+        log.info("Rebuilt recommendations for {} events in {} ms", refreshed, System.currentTimeMillis() - start);
+    }
+
+    private void refresh(Integer eventId) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            // a list is only ever rewritten by one transaction at a time
+            em.createNativeQuery("SELECT pg_advisory_xact_lock(:lockSpace, :eventId)")
+                    .setParameter("lockSpace", LOCK_SPACE)
+                    .setParameter("eventId", eventId)
+                    .getSingleResult();
+
+            em.createNativeQuery("DELETE FROM events.event_recommendation WHERE event_id = :eventId")
+                    .setParameter("eventId", eventId)
+                    .executeUpdate();
+
+            em.createNativeQuery("""
+                    INSERT INTO events.event_recommendation (event_id, rank, recommended_event_id, distance)
+                    SELECT :eventId, row_number() OVER (ORDER BY knn.distance, knn.id), knn.id, knn.distance
+                    FROM (
+                        SELECT id, embedding <=> (SELECT embedding FROM events.event WHERE id = :eventId) AS distance
+                        FROM events.event
+                        WHERE id != :eventId
+                        ORDER BY distance
+                        LIMIT :size
+                    ) knn
+                    WHERE knn.distance <= :maxDistance
+                    """)
+                    .setParameter("eventId", eventId)
+                    .setParameter("size", properties.getSize())
+                    .setParameter("maxDistance", properties.getMaxDistance())
+                    .executeUpdate();
+
+            em.createNativeQuery("""
+                    INSERT INTO events.event_recommendation_list (event_id) VALUES (:eventId)
+                    ON CONFLICT (event_id) DO UPDATE SET refreshed_at = now()
+                    """)
+                    .setParameter("eventId", eventId)
+                    .executeUpdate();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> findListsContaining(Integer eventId) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT event_id FROM events.event_recommendation WHERE recommended_event_id = :eventId")
+                        .setParameter("eventId", eventId)
+                        .getResultList());
+    }
+
+    // neighbours whose list is short or whose furthest entry is further away than this event
+    @SuppressWarnings("unchecked")
+    private List<Integer> findListsToJoin(Integer eventId) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            // the HNSW scan stops at ef_search rows, so it has to cover every candidate
+            em.createNativeQuery("SELECT set_config('hnsw.ef_search', :efSearch, true)")
+                    .setParameter("efSearch", String.valueOf(vectorSearchProperties.efSearchFor(null)))
+                    .getSingleResult();
+
+            return em.createNativeQuery("""
+                        SELECT knn.id
+                        FROM (
+                            SELECT id, embedding <=> (SELECT embedding FROM events.event WHERE id = :eventId) AS distance
+                            FROM events.event
+                            WHERE id != :eventId
+                            ORDER BY distance
+                            LIMIT :candidates
+                        ) knn
+                        CROSS JOIN LATERAL (
+                            SELECT count(*) AS entries, max(r.distance) AS furthest
+                            FROM events.event_recommendation r
+                            WHERE r.event_id = knn.id
+                        ) list
+                        WHERE knn.distance <= :maxDistance
+                        AND (list.entries < :size OR knn.distance < list.furthest)
+                        """)
+                        .setParameter("eventId", eventId)
+                        .setParameter("candidates", vectorSearchProperties.getCandidates())
+                        .setParameter("size", properties.getSize())
+                        .setParameter("maxDistance", properties.getMaxDistance())
+                        .getResultList();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> findEventIdsAfter(int afterId) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                em.createNativeQuery("SELECT id FROM events.event WHERE id > :afterId ORDER BY id LIMIT 500")
+                        .setParameter("afterId", afterId)
+                        .getResultList());
+    }
+}
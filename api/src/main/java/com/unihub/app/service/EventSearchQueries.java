@@ -0,0 +1,265 @@
+package com.unihub.app.service;
+
+import com.unihub.app.util.Keyset;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.unihub.app.util.Keyset.KeyType.*;
+import static com.unihub.app.util.Keyset.asc;
+import static com.unihub.app.util.Keyset.desc;
+
+/**
+ * The SQL of every event search shape, built once up front. A shape is the set of filters a
+ * request uses, where its candidates come from and its sort; every value is a bind
+ * parameter, so each shape is a single statement string that Hibernate and the driver parse
+ * and plan once. Uses are counted per shape in events.search.queries.
+ *
+ * <p>Results with the same sort value are ordered by relevance: vector candidates nearest first,
+ * full-text and hybrid candidates by their fused score, highest first.
+ *
+ * <p>Searches only look at their first :candidates matches. Filters run inside the database's
+ * candidate scans so they don't use that budget up, and every search returns whether a scan was
+ * full in its capped column.
+ */
+@Component
+@RequiredArgsConstructor
+public class EventSearchQueries {
+    public static final int TYPES = 1;
+    public static final int START_DATE = 1 << 1;
+    public static final int END_DATE = 1 << 2;
+    public static final int MIN_ATTENDEES = 1 << 3;
+    public static final int LAST_NUM_ATTENDEES = 1 << 4;
+    public static final int LAST_START_DATE = 1 << 5;
+    public static final int CURSOR = 1 << 6;
+    private static final int FILTER_COMBINATIONS = 1 << 7;
+    private static final String[] FILTER_NAMES = {"types", "startDate", "endDate", "minAttendees", "lastNumAttendees", "lastStartDate", "cursor"};
+
+    public enum Candidates {
+        // no search query
+        NONE,
+        // pgvector k-NN scan over events.event
+        DATABASE,
+        // ids and distances from EventVectorIndex
+        INDEX,
+        // full-text matches on events.event.search_vector
+        LEXICAL,
+        // full-text matches fused with the pgvector k-NN scan
+        HYBRID_DATABASE,
+        // full-text matches fused with the ids from EventVectorIndex
+        HYBRID_INDEX;
+
+        boolean fused() {
+            return this == LEXICAL || this == HYBRID_DATABASE || this == HYBRID_INDEX;
+        }
+    }
+
+    public enum Sort { RECENCY, POPULARITY }
+
+    /**
+     * relevance names the column ranking search results, null without a search query, in which
+     * case there is no capped column either.
+     */
+    public record Template(String sql, Keyset keyset, String relevance) {}
+
+    // every ordering ends in e.id so its last key is unique; without a search query all keys share a
+    // direction and pages seek through idx_event_start_date_id / idx_event_num_attendees_id
+    private static final Keyset RECENCY_KEYSET = new Keyset("recency",
+            asc("e.event_start_date_utc", INSTANT), asc("e.id", INTEGER));
+    private static final Keyset RECENCY_SEARCH_KEYSET = new Keyset("recency-search",
+            asc("e.event_start_date_utc", INSTANT), asc("knn.distance", DOUBLE), asc("e.id", INTEGER));
+    private static final Keyset POPULARITY_KEYSET = new Keyset("popularity",
+            desc("e.num_attendees", INTEGER), desc("e.id", INTEGER));
+    private static final Keyset POPULARITY_SEARCH_KEYSET = new Keyset("popularity-search",
+            desc("e.num_attendees", INTEGER), asc("knn.distance", DOUBLE), desc("e.id", INTEGER));
+    private static final Keyset RECENCY_FUSED_KEYSET = new Keyset("recency-fused",
+            asc("e.event_start_date_utc", INSTANT), desc("fused.score", DOUBLE), asc("e.id", INTEGER));
+    private static final Keyset POPULARITY_FUSED_KEYSET = new Keyset("popularity-fused",
+            desc("e.num_attendees", INTEGER), desc("fused.score", DOUBLE), desc("e.id", INTEGER));
+
+    // every column Event maps, so native searches never pull the embedding column
+    static final String EVENT_COLUMNS = "e.id, e.name, e.type, e.description, e.location, e.capacity, e.image, e.num_attendees, " +
+            "e.event_start_date_utc, e.event_end_date_utc, e.event_timezone, e.creator_user_id, e.max_tickets, e.requires_approval, e.approval_success_message";
+
+    static final float SEARCH_DISTANCE_THRESHOLD = 1 - 0.8f;
+
+    // reciprocal rank fusion scores a result 1 / (RRF_K + rank) in every list it appears in,
+    // 60 is the constant from Cormack et al. and keeps one list's top hit from swamping the other
+    static final int RRF_K = 60;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Template[] templates = build();
+    private final Counter[] uses = new Counter[templates.length];
+
+    public Template get(int filters, Candidates candidates, Sort sort) {
+        int index = index(filters, candidates, sort);
+        Counter counter = uses[index];
+        if (counter == null) {
+            // registered on first use, the registry hands back the same counter if two threads race here
+            counter = Counter.builder("events.search.queries")
+                    .description("Event searches by query shape")
+                    .tag("filters", filterNames(filters))
+                    .tag("candidates", candidates.name().toLowerCase())
+                    .tag("sort", sort.name().toLowerCase())
+                    .register(meterRegistry);
+            uses[index] = counter;
+        }
+        counter.increment();
+        return templates[index];
+    }
+
+    private static int index(int filters, Candidates candidates, Sort sort) {
+        return (sort.ordinal() * Candidates.values().length + candidates.ordinal()) * FILTER_COMBINATIONS + filters;
+    }
+
+    private static Template[] build() {
+        Template[] templates = new Template[Sort.values().length * Candidates.values().length * FILTER_COMBINATIONS];
+        for (Sort sort : Sort.values()) {
+            for (Candidates candidates : Candidates.values()) {
+                for (int filters = 0; filters < FILTER_COMBINATIONS; filters++) {
+                    templates[index(filters, candidates, sort)] = build(filters, candidates, sort);
+                }
+            }
+        }
+        return templates;
+    }
+
+    private static Template build(int filters, Candidates candidates, Sort sort) {
+        boolean searching = candidates != Candidates.NONE;
+        boolean fused = candidates.fused();
+        Keyset keyset;
+        if (sort == Sort.POPULARITY) {
+            keyset = fused ? POPULARITY_FUSED_KEYSET : searching ? POPULARITY_SEARCH_KEYSET : POPULARITY_KEYSET;
+        } else {
+            keyset = fused ? RECENCY_FUSED_KEYSET : searching ? RECENCY_SEARCH_KEYSET : RECENCY_KEYSET;
+        }
+
+        StringBuilder sql = new StringBuilder();
+
+        if (candidates == Candidates.INDEX) {
+            sql.append("WITH knn AS (");
+            sql.append("SELECT * FROM unnest(CAST(:ids AS int[]), CAST(:distances AS float8[])) AS knn(id, distance)) ");
+        } else if (candidates == Candidates.DATABASE) {
+            // a k-NN scan the HNSW index can serve, sorting only runs over its candidates
+            sql.append("WITH knn AS (");
+            sql.append("SELECT e.id, e.embedding <=> CAST(:embedding AS vector) AS distance ");
+            sql.append("FROM events.event e WHERE e.embedding <=> CAST(:embedding AS vector) <= ").append(SEARCH_DISTANCE_THRESHOLD).append(" ");
+            appendFilters(sql, filters);
+            sql.append("ORDER BY distance LIMIT :candidates) ");
+        } else if (fused) {
+            appendFusedCandidates(sql, candidates, filters);
+        }
+
+        if (fused) {
+            sql.append("SELECT ").append(EVENT_COLUMNS).append(", fused.score, ").append(capped(candidates)).append(" AS capped ");
+            sql.append("FROM fused JOIN events.event e ON e.id = fused.id WHERE 1=1 ");
+        } else if (searching) {
+            sql.append("SELECT ").append(EVENT_COLUMNS).append(", knn.distance, ").append(capped(candidates)).append(" AS capped ");
+            sql.append("FROM knn JOIN events.event e ON e.id = knn.id WHERE 1=1 ");
+        } else {
+            sql.append("SELECT ").append(EVENT_COLUMNS).append(" ");
+            sql.append("FROM events.event e WHERE 1=1 ");
+        }
+
+        // ids from EventVectorIndex haven't been filtered yet
+        if (candidates == Candidates.NONE || candidates == Candidates.INDEX || candidates == Candidates.HYBRID_INDEX) {
+            appendFilters(sql, filters);
+        }
+        if ((filters & CURSOR) != 0) {
+            sql.append("AND ").append(keyset.seek()).append(" ");
+        }
+
+        if (searching && !fused) {
+            sql.append("AND knn.distance <= ")
+                    .append(SEARCH_DISTANCE_THRESHOLD)
+                    .append(" ");
+        }
+
+        sql.append("ORDER BY ").append(keyset.orderBy()).append(" ");
+        sql.append("LIMIT :limit");
+
+        String relevance = fused ? "score" : searching ? "distance" : null;
+        return new Template(sql.toString(), keyset, relevance);
+    }
+
+    // every filter but the cursor, which seeks on the search's relevance
+    private static void appendFilters(StringBuilder sql, int filters) {
+        if ((filters & TYPES) != 0) {
+            sql.append("AND e.type = ANY(:types) ");
+        }
+        if ((filters & START_DATE) != 0) {
+            sql.append("AND e.event_start_date_utc >= :startDate ");
+        }
+        if ((filters & END_DATE) != 0) {
+            sql.append("AND e.event_end_date_utc <= :endDate ");
+        }
+        if ((filters & MIN_ATTENDEES) != 0) {
+            sql.append("AND e.num_attendees >= :minAttendees ");
+        }
+        if ((filters & LAST_NUM_ATTENDEES) != 0) {
+            sql.append("AND e.num_attendees < :lastNumAttendees ");
+        }
+        if ((filters & LAST_START_DATE) != 0) {
+            sql.append("AND e.event_start_date_utc > :lastStartDate ");
+        }
+    }
+
+    // whether a candidate scan the database ran stopped at :candidates, EventVectorIndex's are counted by the caller
+    private static String capped(Candidates candidates) {
+        return switch (candidates) {
+            case DATABASE -> "(SELECT count(*) FROM knn) >= :candidates";
+            case LEXICAL, HYBRID_INDEX -> "(SELECT count(*) FROM lexical) >= :candidates";
+            case HYBRID_DATABASE -> "((SELECT count(*) FROM lexical) >= :candidates OR (SELECT count(*) FROM vector) >= :candidates)";
+            default -> "false";
+        };
+    }
+
+    /**
+     * The fused CTE: the full-text matches ranked by ts_rank_cd and, in hybrid searches, the
+     * vector candidates within the distance threshold ranked nearest first, merged by reciprocal
+     * rank fusion. Exact words match even when their embedding is too far away to pass the
+     * threshold.
+     */
+    private static void appendFusedCandidates(StringBuilder sql, Candidates candidates, int filters) {
+        sql.append("WITH lexical AS (");
+        sql.append("SELECT e.id, row_number() OVER (ORDER BY ts_rank_cd(e.search_vector, q.query) DESC, e.id) AS rank ");
+        sql.append("FROM events.event e, websearch_to_tsquery('english', :searchQuery) AS q(query) ");
+        sql.append("WHERE e.search_vector @@ q.query ");
+        appendFilters(sql, filters);
+        sql.append("ORDER BY rank LIMIT :candidates), ");
+
+        if (candidates == Candidates.HYBRID_INDEX) {
+            // EventVectorIndex hands the ids over nearest first and already within the threshold
+            sql.append("vector AS (");
+            sql.append("SELECT id, rank FROM unnest(CAST(:ids AS int[])) WITH ORDINALITY AS v(id, rank)), ");
+        } else if (candidates == Candidates.HYBRID_DATABASE) {
+            sql.append("vector AS (");
+            sql.append("SELECT id, row_number() OVER (ORDER BY distance, id) AS rank FROM (");
+            sql.append("SELECT e.id, e.embedding <=> CAST(:embedding AS vector) AS distance ");
+            sql.append("FROM events.event e WHERE e.embedding <=> CAST(:embedding AS vector) <= ").append(SEARCH_DISTANCE_THRESHOLD).append(" ");
+            appendFilters(sql, filters);
+            sql.append("ORDER BY distance LIMIT :candidates) knn), ");
+        }
+
+        sql.append("fused AS (");
+        sql.append("SELECT id, CAST(sum(1.0 / (").append(RRF_K).append(" + rank)) AS float8) AS score FROM (");
+        sql.append("SELECT id, rank FROM lexical");
+        if (candidates != Candidates.LEXICAL) {
+            sql.append(" UNION ALL SELECT id, rank FROM vector");
+        }
+        sql.append(") ranks GROUP BY id) ");
+    }
+
+    private static String filterNames(int filters) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < FILTER_NAMES.length; i++) {
+            if ((filters & (1 << i)) != 0) names.add(FILTER_NAMES[i]);
+        }
+        return names.isEmpty() ? "none" : String.join("+", names);
+    }
+}
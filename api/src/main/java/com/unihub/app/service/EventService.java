@@ -3,6 +3,7 @@ package com.unihub.app.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unihub.app.VectorSearchProperties;
 import com.unihub.app.dto.DTOMapper;
 import com.unihub.app.dto.EmailDTO;
 import com.unihub.app.dto.EventDTO;
@@ -13,25 +14,37 @@ import com.unihub.app.dto.response.SearchedEventsResponse;
 import com.unihub.app.exception.*;
 import com.unihub.app.model.*;
 import com.unihub.app.repository.*;
+import com.unihub.app.util.HnswIndex;
+import com.unihub.app.util.Keyset;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
+import static com.unihub.app.service.EventSearchQueries.EVENT_COLUMNS;
+import static com.unihub.app.service.EventSearchQueries.SEARCH_DISTANCE_THRESHOLD;
 import static com.unihub.app.util.ArrayOperations.toPostgresArray;
 import static com.unihub.app.util.FileOperations.getFileExtension;
+import static com.unihub.app.util.VectorOperations.normalize;
+import static com.unihub.app.util.VectorType.bindVector;
 
 @Service
 @RequiredArgsConstructor
@@ -46,8 +59,6 @@ public class EventService {
     @Autowired
     private QuestionRepo questionRepo;
     @Autowired
-    private AnswerRepo answerRepo;
-    @Autowired
     private DTOMapper dtoMapper;
     @Autowired
     private OpenAIService openAIService;
@@ -55,6 +66,22 @@ public class EventService {
     private EmailService emailService;
     @Autowired
     private EntityManager em;
+    @Autowired
+    private VectorSearchProperties vectorSearchProperties;
+    @Autowired
+    private EventVectorIndex eventVectorIndex;
+    @Autowired
+    private EventRecommendationService eventRecommendationService;
+    @Autowired
+    private EventSearchQueries eventSearchQueries;
+    @Autowired
+    private EventCapacityService eventCapacityService;
+    @Autowired
+    private WaitlistService waitlistService;
+    @Autowired
+    private RsvpWriter rsvpWriter;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     private final S3Client s3Client;
 
@@ -72,89 +99,122 @@ public class EventService {
         return eventDTOs;
     }
 
+    /**
+     * The query embedding and the candidates from EventVectorIndex are fetched before the read
+     * transaction opens, so no pooled connection waits on OpenAI. A page that comes back short from
+     * a full candidate set is searched again with more candidates.
+     */
     public SearchedEventsResponse getEvents(EventSearchRequest request){
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT *, ");
-
-        float[] embedding = null;
-        Float[] embeddingObj = null;
-        if (request.getSearchQuery() != null) {
-            embedding = openAIService.generateEmbedding(request.getSearchQuery());
-            embeddingObj = new Float[embedding.length];
+        boolean searching = request.getSearchQuery() != null;
+        boolean popularity = "popularity".equals(request.getSortBy());
+        // the legacy page markers, only honoured without a cursor
+        boolean legacyPaging = request.getCursor() == null;
+
+        int filters = 0;
+        if (request.getTypes() != null && !request.getTypes().isEmpty()) filters |= EventSearchQueries.TYPES;
+        if (request.getStartDate() != null) filters |= EventSearchQueries.START_DATE;
+        if (request.getEndDate() != null) filters |= EventSearchQueries.END_DATE;
+        if (request.getMinAttendees() != null) filters |= EventSearchQueries.MIN_ATTENDEES;
+        if (legacyPaging && request.getLastNumAttendees() != null) filters |= EventSearchQueries.LAST_NUM_ATTENDEES;
+        if (legacyPaging && request.getLastStartDate() != null) filters |= EventSearchQueries.LAST_START_DATE;
+        if (!legacyPaging) filters |= EventSearchQueries.CURSOR;
+
+        // lexical skips the embedding call, hybrid runs both retrievals, anything else is vector only
+        boolean lexical = searching && ("lexical".equals(request.getSearchMode()) || "hybrid".equals(request.getSearchMode()));
+        boolean vector = searching && !"lexical".equals(request.getSearchMode());
+
+        float[] queryEmbedding = vector ? openAIService.generateQueryEmbedding(request.getSearchQuery()) : null;
+        // candidates come from the in-process index when it is ready, the database then only hydrates and filters them
+        boolean fromIndex = vector && eventVectorIndex.isReady();
+        EventSearchQueries.Candidates source = EventSearchQueries.Candidates.NONE;
+        if (fromIndex) {
+            source = lexical ? EventSearchQueries.Candidates.HYBRID_INDEX : EventSearchQueries.Candidates.INDEX;
+        } else if (vector) {
+            source = lexical ? EventSearchQueries.Candidates.HYBRID_DATABASE : EventSearchQueries.Candidates.DATABASE;
+        } else if (lexical) {
+            source = EventSearchQueries.Candidates.LEXICAL;
+        }
+
+        EventSearchQueries.Template template = eventSearchQueries.get(filters, source,
+                popularity ? EventSearchQueries.Sort.POPULARITY : EventSearchQueries.Sort.RECENCY);
+        Keyset keyset = template.keyset();
+        Object[] cursor = legacyPaging ? null : keyset.decode(request.getCursor());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        int candidateCount = vectorSearchProperties.getCandidates();
+        SearchPage page;
+        while (true) {
+            List<HnswIndex.Neighbour> candidates = fromIndex ? eventVectorIndex.search(
+                    queryEmbedding,
+                    candidateCount,
+                    vectorSearchProperties.efSearchFor(request.getEfSearch(), candidateCount),
+                    SEARCH_DISTANCE_THRESHOLD
+            ) : null;
+            float[] embedding = vector && !fromIndex ? queryEmbedding : null;
+            int k = candidateCount;
+            page = transaction.execute(status -> searchEvents(request, template, cursor, embedding, candidates, lexical, k));
+
+            if (page.events().size() == request.getLimit() || !page.capped()
+                    || candidateCount >= vectorSearchProperties.getMaxCandidates()) break;
+            candidateCount = Math.min(candidateCount * 4, vectorSearchProperties.getMaxCandidates());
+        }
+
+        List<Event> events = page.events();
+        List<EventDTO> eventDTOs = new ArrayList<EventDTO>();
 
-            float norm = 0f;
-            for (float f : embedding) {
-                norm += f * f;
-            }
-            norm = (float) Math.sqrt(norm);
-            if (norm > 0) {
-                for (int i = 0; i < embedding.length; i++) {
-                    embedding[i] /= norm;
-                }
-            }
+        for (Event event : events) {
+            eventDTOs.add(dtoMapper.toEventDTO(event));
+        }
 
-            for (int i = 0; i < embedding.length; i++) {
-                embeddingObj[i] = embedding[i];
-            }
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
+        SearchedEventsResponse response;
+        if (events.size() == request.getLimit()) {
+            Event last = events.get(request.getLimit() - 1);
+            Object sortValue = popularity ? last.getNumAttendees() : last.getEventStartDateUtc();
+            String nextCursor = searching
+                    ? keyset.encode(sortValue, page.lastRelevance(), last.getId())
+                    : keyset.encode(sortValue, last.getId());
 
-            sql.append("(e.embedding <=> '").append(embeddingLiteral).append("'::vector) AS distance ");
+            response = new SearchedEventsResponse(
+                    eventDTOs,
+                    last.getNumAttendees(),
+                    last.getEventStartDateUtc(),
+                    true,
+                    nextCursor,
+                    page.capped()
+            );
         } else {
-            sql.append("NULL AS similarity ");
+            response = new SearchedEventsResponse(
+                    eventDTOs,
+                    -1,
+                    null,
+                    false,
+                    null,
+                    page.capped()
+            );
         }
 
-        sql.append("FROM events.event e WHERE 1=1 ");
+        return response;
+    }
 
-        if (request.getTypes() != null && !request.getTypes().isEmpty()) {
-            sql.append("AND e.type = ANY(:types) ");
-        }
-        if (request.getStartDate() != null) {
-            sql.append("AND e.event_start_date_utc >= :startDate ");
-        }
-        if (request.getEndDate() != null) {
-            sql.append("AND e.event_end_date_utc <= :endDate ");
-        }
-        if (request.getMinAttendees() != null) {
-            sql.append("AND e.num_attendees >= :minAttendees ");
-        }
-        if (request.getLastNumAttendees() != null) {
-            sql.append("AND e.num_attendees < :lastNumAttendees ");
-        }
-        if (request.getLastStartDate() != null) {
-            sql.append("AND e.event_start_date_utc > :lastStartDate ");
-        }
+    private record SearchPage(List<Event> events, Double lastRelevance, boolean capped) {}
 
-        if (embedding != null) {
-            float similarityThreshold = 0.8f;
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
-            float distanceThreshold = 1 - similarityThreshold;
-
-            sql.append("AND (e.embedding <=> '").append(embeddingLiteral).append("'::vector <= ")
-                    .append(distanceThreshold)
-                    .append(") ");
-        }
+    private SearchPage searchEvents(EventSearchRequest request, EventSearchQueries.Template template, Object[] cursor,
+                                    float[] embedding, List<HnswIndex.Neighbour> candidates, boolean lexical, int candidateCount) {
+        boolean legacyPaging = request.getCursor() == null;
+        if (embedding != null) setEfSearch(request.getEfSearch(), candidateCount);
 
-        sql.append("ORDER BY ");
-        if ("popularity".equals(request.getSortBy())) {
-            sql.append("e.num_attendees DESC, ");
+        Query query;
+        if (template.relevance() != null) {
+            query = em.createNativeQuery(template.sql());
+            query.unwrap(NativeQuery.class)
+                    .addEntity("e", Event.class)
+                    .addScalar(template.relevance(), StandardBasicTypes.DOUBLE)
+                    .addScalar("capped", StandardBasicTypes.BOOLEAN);
         } else {
-            sql.append("e.event_start_date_utc ASC, ");
-        }
-
-        if (embedding != null) {
-            String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                    .map(f -> Float.toString(f))
-                    .collect(Collectors.joining(",")) + "]";
-            sql.append("(e.embedding <=> '").append(embeddingLiteral).append("'::vector) ASC, ");
+            query = em.createNativeQuery(template.sql(), Event.class);
         }
-        sql.append("e.id ASC ");
-        sql.append("LIMIT :limit");
-
-        Query query = em.createNativeQuery(sql.toString(), Event.class);
 
         if (request.getTypes() != null && !request.getTypes().isEmpty()) {
             query.setParameter("types", request.getTypes().toArray(new String[0]));
@@ -168,40 +228,46 @@ public class EventService {
         if (request.getMinAttendees() != null) {
             query.setParameter("minAttendees", request.getMinAttendees());
         }
-        if (request.getLastNumAttendees() != null) {
+        if (legacyPaging && request.getLastNumAttendees() != null) {
             query.setParameter("lastNumAttendees", request.getLastNumAttendees());
         }
-        if (request.getLastStartDate() != null) {
+        if (legacyPaging && request.getLastStartDate() != null) {
             query.setParameter("lastStartDate", request.getLastStartDate());
         }
-        query.setParameter("limit", request.getLimit());
-
-        List<Event> events = query.getResultList();
-
-        List<EventDTO> eventDTOs = new ArrayList<EventDTO>();
-
-        for (Event event : events) {
-            eventDTOs.add(dtoMapper.toEventDTO(event));
+        if (cursor != null) {
+            template.keyset().bind(query, cursor);
         }
-
-        SearchedEventsResponse response;
-        if (events.size() == request.getLimit()) {
-            response = new SearchedEventsResponse(
-                    eventDTOs,
-                    events.get(request.getLimit() - 1).getNumAttendees(),
-                    events.get(request.getLimit() - 1).getEventStartDateUtc(),
-                    true
-            );
-        } else {
-            response = new SearchedEventsResponse(
-                    eventDTOs,
-                    -1,
-                    null,
-                    false
-            );
+        if (embedding != null) {
+            bindVector(query, "embedding", embedding);
+        }
+        if (embedding != null || lexical) {
+            query.setParameter("candidates", candidateCount);
+        }
+        if (candidates != null) {
+            query.setParameter("ids", candidates.stream().map(HnswIndex.Neighbour::id).toArray(Integer[]::new));
         }
+        if (candidates != null && !lexical) {
+            query.setParameter("distances", candidates.stream().map(n -> (double) n.distance()).toArray(Double[]::new));
+        }
+        if (lexical) {
+            query.setParameter("searchQuery", request.getSearchQuery());
+        }
+        query.setParameter("limit", request.getLimit());
 
-        return response;
+        List<Event> events = new ArrayList<>();
+        Double lastRelevance = null;
+        // the index's own scan is full when it found every neighbour it was asked for
+        boolean capped = candidates != null && candidates.size() >= candidateCount;
+        for (Object row : query.getResultList()) {
+            if (row instanceof Object[] columns) {
+                events.add((Event) columns[0]);
+                lastRelevance = (Double) columns[1];
+                capped |= (Boolean) columns[2];
+            } else {
+                events.add((Event) row);
+            }
+        }
+        return new SearchPage(events, lastRelevance, capped);
     }
 
     public EventDTO getEvent(Integer eventId) {
@@ -225,33 +291,25 @@ public class EventService {
 
         RegistrationStatus oldStatus = registration.getStatus();
         registration.setStatus(newStatus);
+        if (newStatus == RegistrationStatus.WAITLISTED && oldStatus != RegistrationStatus.WAITLISTED) {
+            registration.setWaitlistSeq(waitlistService.nextPlace());
+            waitlistService.joinedAfterCommit(registration.getEvent().getId());
+        } else if (newStatus != RegistrationStatus.WAITLISTED) {
+            registration.setWaitlistSeq(null);
+        }
         registrationRepo.save(registration);
 
         Event event = registration.getEvent();
-        if (oldStatus == RegistrationStatus.APPROVED && List.of(RegistrationStatus.REJECTED, RegistrationStatus.CANCELLED, RegistrationStatus.PENDING).contains(newStatus)) {
+        if (oldStatus == RegistrationStatus.APPROVED && List.of(RegistrationStatus.REJECTED, RegistrationStatus.CANCELLED, RegistrationStatus.PENDING, RegistrationStatus.WAITLISTED).contains(newStatus)) {
             em.detach(event);
-            em.createNativeQuery("""
-                                       UPDATE events.event
-                                       SET num_attendees = num_attendees - :tickets
-                                       WHERE id = :eventId
-                               """)
-                    .setParameter("tickets", registration.getTickets())
-                    .setParameter("eventId", event.getId())
-                    .executeUpdate();
+            eventCapacityService.release(event.getId(), registration.getTickets());
+            waitlistService.promoteAfterCommit(event.getId());
             event.setNumAttendees(event.getNumAttendees() - registration.getTickets());
-        } else if (List.of(RegistrationStatus.REJECTED, RegistrationStatus.CANCELLED, RegistrationStatus.PENDING).contains(oldStatus) && newStatus == RegistrationStatus.APPROVED) {
-            if (event.getNumAttendees() < event.getCapacity() && event.getNumAttendees() + registration.getTickets() < event.getCapacity()) {
-                em.detach(event);
-                em.createNativeQuery("""
-                                       UPDATE events.event
-                                       SET num_attendees = num_attendees + :tickets
-                                       WHERE id = :eventId
-                                """)
-                        .setParameter("tickets", registration.getTickets())
-                        .setParameter("eventId", event.getId())
-                        .executeUpdate();
-                event.setNumAttendees(event.getNumAttendees() + registration.getTickets());
-            }
+        } else if (List.of(RegistrationStatus.REJECTED, RegistrationStatus.CANCELLED, RegistrationStatus.PENDING, RegistrationStatus.WAITLISTED).contains(oldStatus) && newStatus == RegistrationStatus.APPROVED) {
+            em.detach(event);
+            eventCapacityService.reserve(event.getId(), registration.getTickets());
+            eventCapacityService.book(event.getId(), registration.getTickets());
+            event.setNumAttendees(event.getNumAttendees() + registration.getTickets());
         }
         return dtoMapper.toRegistrationDTO(registration);
     }
@@ -261,17 +319,45 @@ public class EventService {
         return new RegisteredResponse(registration.isPresent(), registration.map(Registration::getId).orElse(-1), registration.map(Registration::getDisplayName).orElse(null), registration.map(Registration::getStatus).orElse(null));
     }
 
-//    fix
+    /**
+     * A changed name or description is embedded before the transaction opens, so no pooled
+     * connection waits on OpenAI; the row, its embedding and the index are written inside it.
+     */
     public EventDTO updateEvent(Integer eventId, UpdateEventRequest toUpdate) {
+        Event current = eventRepo.findById(eventId).orElseThrow(() -> new EventNotFoundException("Event not found"));
+        String embeddingText = embeddingText(
+                toUpdate.getName() != null ? toUpdate.getName() : current.getName(),
+                toUpdate.getDescription() != null ? toUpdate.getDescription() : current.getDescription());
+        float[] embedding = embeddingText.equals(embeddingText(current)) ? null
+                : normalize(openAIService.generateEmbedding(embeddingText));
+
+        return new TransactionTemplate(transactionManager).execute(status -> writeEventUpdate(eventId, toUpdate, embeddingText, embedding));
+    }
+
+    private EventDTO writeEventUpdate(Integer eventId, UpdateEventRequest toUpdate, String embeddedText, float[] embedding) {
         Event event = eventRepo.findById(eventId).orElseThrow(() -> new EventNotFoundException("Event not found"));
 
         if (toUpdate.getName() != null) event.setName(toUpdate.getName());
         if (toUpdate.getType() != null) event.setType(toUpdate.getType());
         if (toUpdate.getDescription() != null) event.setDescription(toUpdate.getDescription());
         if (toUpdate.getLocation() != null) event.setLocation(toUpdate.getLocation());
-        if (toUpdate.getCapacity() != null) event.setCapacity(toUpdate.getCapacity());
+        if (toUpdate.getCapacity() != null) {
+            event.setCapacity(toUpdate.getCapacity());
+            eventCapacityService.invalidate(eventId);
+            waitlistService.promoteAfterCommit(eventId);
+        }
 
         Event updatedEvent = eventRepo.save(event);
+
+        // an update that changed the other field meanwhile leaves its own embedding in place
+        if (embedding != null && embeddedText.equals(embeddingText(updatedEvent))) {
+            Query update = em.createNativeQuery("UPDATE events.event SET embedding = :embedding WHERE id = :eventId");
+            bindVector(update, "embedding", embedding);
+            update.setParameter("eventId", eventId).executeUpdate();
+            eventVectorIndex.upsert(eventId, embedding);
+            afterCommit(() -> eventRecommendationService.refreshAround(eventId));
+        }
+
         return dtoMapper.toEventDTO(updatedEvent);
     }
 
@@ -336,35 +422,9 @@ public class EventService {
             thumbnail = String.format("https://pub-13855262101b49ee8952e3133c109be0.r2.dev/%s", key);
         }
 
-        String textForEmbedding = event.getName() + event.getName() + event.getName();
-        if (event.getDescription() != null && !event.getDescription().isEmpty()) {
-            textForEmbedding += " " + event.getDescription();
-        }
-        float[] embedding = openAIService.generateEmbedding(textForEmbedding);
-        float norm = 0f;
-        for (float f : embedding) {
-            norm += f * f;
-        }
-        norm = (float) Math.sqrt(norm);
-
-        if (norm > 0) {
-            for (int i = 0; i < embedding.length; i++) {
-                embedding[i] /= norm;
-            }
-        }
-        event.setEmbedding(embedding);
-
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < embedding.length; i++) {
-            sb.append(embedding[i]);
-            if (i < embedding.length - 1) {
-                sb.append(",");
-            }
-        }
-        sb.append("]");
-        String embeddingLiteral = sb.toString();
+        float[] embedding = normalize(openAIService.generateEmbedding(embeddingText(event)));
 
-        String sql = String.format("""
+        String sql = """
             INSERT INTO events.event (
                 name, type, description, location, capacity, image,
                 num_attendees, event_start_date_utc, event_end_date_utc,
@@ -373,12 +433,14 @@ public class EventService {
             VALUES (
                 :name, :type, :description, :location, :capacity, :image,
                 :numAttendees, :startDate, :endDate,
-                :timezone, :creatorId, :maxTickets, :requiresApproval, :approvalSuccessMessage, '%s'::vector
+                :timezone, :creatorId, :maxTickets, :requiresApproval, :approvalSuccessMessage, :embedding
             )
             RETURNING id
-            """, embeddingLiteral);
+            """;
 
-        Integer generatedId = (Integer) em.createNativeQuery(sql)
+        Query insert = em.createNativeQuery(sql);
+        bindVector(insert, "embedding", embedding);
+        Integer generatedId = (Integer) insert
                 .setParameter("name", event.getName())
                 .setParameter("type", event.getType())
                 .setParameter("description", event.getDescription())
@@ -395,6 +457,9 @@ public class EventService {
                 .setParameter("approvalSuccessMessage", event.getApprovalSuccessMessage())
                 .getSingleResult();
 
+        eventVectorIndex.upsert(generatedId, embedding);
+        afterCommit(() -> eventRecommendationService.refreshAround(generatedId));
+
         em.flush();
         em.clear(); // Clear the persistence context
 
@@ -436,96 +501,17 @@ public class EventService {
     // update to support answers
     @Transactional
     public void rsvpEvent(Integer eventId, String userEmail, String displayName, Integer tickets, RegistrationStatus status, List<AnswerRequest> answers) {
-        Event event = eventRepo.findById(eventId)
-                .orElseThrow(() -> new EventNotFoundException("Event not found"));
-        AppUser attendee = appUserRepo.findByEmail(userEmail)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-
-        if (event.getNumAttendees() >= event.getCapacity()) throw new CapacityLimitReachedException("Event is at full capacity");
-        if (event.getNumAttendees() + tickets > event.getCapacity()) throw new CapacityLimitReachedException("Event does not have enough capacity for the number of tickets you requested");
-        if (tickets > event.getMaxTickets()) throw new CapacityLimitReachedException("You can only request up to "+event.getMaxTickets()+" tickets");
-
-        boolean alreadyRegistered = em.createQuery("""
-            SELECT COUNT(r)
-            FROM Registration r
-            WHERE r.event = :event AND r.attendee = :attendee
-        """, Long.class)
-                .setParameter("event", event)
-                .setParameter("attendee", attendee)
-                .getSingleResult() > 0;
-
-        if (alreadyRegistered) throw new UserAlreadyRegisteredException("User is already registered for event");
-
-        if (event.getQuestions() != null) {
-            List<Integer> requiredQuestionIds =
-                    event.getQuestions().stream()
-                            .filter(Question::isRequired)
-                            .map(Question::getId)
-                            .toList();
-            Set<Integer> answeredQuestionIds = answers == null ? Set.of() :
-                    answers.stream()
-                            .map(AnswerRequest::getQuestionId)
-                            .collect(Collectors.toSet());
-            if (!answeredQuestionIds.containsAll(requiredQuestionIds)) {
-                throw new MissingRequiredAnswersException("All required questions must be answered");
-            }
-        }
-
-        Registration registration = new Registration();
-        registration.setEvent(event);
-        registration.setAttendee(attendee);
-        registration.setDisplayName(displayName != null ? displayName : attendee.getFirstName() + " " + attendee.getLastName());
-        registration.setTickets(tickets);
-        registration.setStatus(status);
+        // a full event, or one with a waitlist, puts RSVPs on it here, before anything is read or locked
+        boolean waitlisted = status == RegistrationStatus.APPROVED && !eventCapacityService.tryAdmit(eventId, tickets);
+        if (status != RegistrationStatus.APPROVED) eventCapacityService.checkRoom(eventId, tickets);
 
-        registrationRepo.save(registration);
-
-        if (answers != null) {
-            for (AnswerRequest ar : answers) {
-                Question question = questionRepo.findById(ar.getQuestionId())
-                        .orElseThrow(() ->
-                                new QuestionNotFoundException("Invalid question")
-                        );
-
-                if (!question.getEvent().getId().equals(eventId)) {
-                    throw new IllegalArgumentException("Question does not belong to this event");
-                }
-
-                if ((question.getType() == QuestionType.MULTISELECT && ar.getMultiAnswer() == null)
-                        || (
-                                (question.getType() == QuestionType.CHOICE || question.getType() == QuestionType.TYPED) && ar.getSingleAnswer() == null)
-                            ) {
-                    throw new InvalidAnswerException("Your answers are invalid, please check it again");
-                }
-
-                Answer answer = new Answer();
-                answer.setRegistration(registration);
-                answer.setQuestion(question);
-                answer.setSingleAnswer(ar.getSingleAnswer());
-                answer.setMultiAnswer(
-                        ar.getMultiAnswer() != null
-                                ? ar.getMultiAnswer().toArray(new String[0])
-                                : null
-                );
-
-                answerRepo.save(answer);
-            }
-        }
+        RsvpWriter.Result result = em.unwrap(Session.class).doReturningWork(connection ->
+                rsvpWriter.write(connection, eventId, userEmail, displayName, tickets, status, waitlisted, answers));
+        if (result.waitlisted()) waitlistService.joinedAfterCommit(eventId);
 
-        if (status == RegistrationStatus.APPROVED) {
-            em.detach(event);
-            em.createNativeQuery("""
-                   UPDATE events.event
-                   SET num_attendees = num_attendees + :tickets
-                   WHERE id = :eventId
-            """)
-                    .setParameter("tickets", tickets)
-                    .setParameter("eventId", eventId)
-                    .executeUpdate();
-            event.setNumAttendees(event.getNumAttendees() + tickets);
-        }
-
-        EmailDTO email = new EmailDTO(userEmail, "You have been registered for "+event.getName()+"! Check your registration status in your profile to see if it got approved.", "Registration Confirmation");
+        EmailDTO email = result.waitlisted()
+                ? new EmailDTO(userEmail, result.eventName()+" is full, so you have been added to its waitlist. We'll email you if a spot opens up.", "Waitlist Confirmation")
+                : new EmailDTO(userEmail, "You have been registered for "+result.eventName()+"! Check your registration status in your profile to see if it got approved.", "Registration Confirmation");
         emailService.sendSimpleEmailAsync(email);
     }
 
@@ -541,14 +527,8 @@ public class EventService {
 
         if (registration.getStatus() == RegistrationStatus.APPROVED) {
             em.detach(event);
-            em.createNativeQuery("""
-                   UPDATE events.event
-                   SET num_attendees = num_attendees - :tickets
-                   WHERE id = :eventId
-            """)
-                    .setParameter("tickets", registration.getTickets())
-                    .setParameter("eventId", eventId)
-                    .executeUpdate();
+            eventCapacityService.release(eventId, registration.getTickets());
+            waitlistService.promoteAfterCommit(eventId);
             event.setNumAttendees(event.getNumAttendees() - registration.getTickets());
         }
 
@@ -560,38 +540,65 @@ public class EventService {
 //        attendee.getEventsAttended().remove(registration);
     }
 
+    @Transactional(readOnly = true)
     public List<EventDTO> getRecommendedEvents(Integer eventId) {
+        List<Event> recommended = em.createNativeQuery("SELECT " + EVENT_COLUMNS + " FROM events.event_recommendation r " +
+                        "JOIN events.event e ON e.id = r.recommended_event_id " +
+                        "WHERE r.event_id = :eventId ORDER BY r.rank LIMIT :limit", Event.class)
+                .setParameter("eventId", eventId)
+                .setParameter("limit", 20)
+                .getResultList();
+        if (!recommended.isEmpty()) {
+            return recommended.stream().map(dtoMapper::toEventDTO).toList();
+        }
+        // computed, but nothing is similar enough
+        boolean computed = !em.createNativeQuery("SELECT 1 FROM events.event_recommendation_list WHERE event_id = :eventId")
+                .setParameter("eventId", eventId)
+                .getResultList()
+                .isEmpty();
+        if (computed) return List.of();
+
+        // not computed yet
         Event event = eventRepo.findById(eventId).orElseThrow(() -> new EventNotFoundException("Event not found"));
-        float[] embedding = event.getEmbedding();
-        Float[] embeddingObj = new Float[embedding.length];
 
         float similarityThreshold = 0.8f;
         float distanceThreshold = 1 - similarityThreshold;
 
-        StringBuilder sql = new StringBuilder();
+        if (eventVectorIndex.isReady()) {
+            Integer[] candidateIds = eventVectorIndex.similarTo(eventId, vectorSearchProperties.getCandidates(), vectorSearchProperties.efSearchFor(null), distanceThreshold);
+            if (candidateIds != null) {
+                Query query = em.createNativeQuery("SELECT " + EVENT_COLUMNS + " FROM events.event e WHERE e.id = ANY(:ids) " +
+                        "ORDER BY array_position(:ids, e.id) ASC LIMIT :limit", Event.class);
+                query.setParameter("ids", candidateIds);
+                query.setParameter("limit", 20);
 
-        for (int i = 0; i < embedding.length; i++) {
-            embeddingObj[i] = embedding[i];
+                List<Event> events = query.getResultList();
+                return events.stream().map(dtoMapper::toEventDTO).toList();
+            }
         }
 
-        String embeddingLiteral = "[" + Arrays.stream(embeddingObj)
-                .map(f -> Float.toString(f))
-                .collect(Collectors.joining(",")) + "]";
+        setEfSearch(null);
+
+        StringBuilder sql = new StringBuilder();
 
-        sql.append("SELECT *, ");
-        sql.append("(e.embedding <=> '").append(embeddingLiteral).append("'::vector) AS distance ");
-        sql.append("FROM events.event e WHERE 1=1 ");
+        // k-NN against the stored embedding in place instead of shipping it back to the database
+        sql.append("WITH knn AS (");
+        sql.append("SELECT id, embedding <=> (SELECT embedding FROM events.event WHERE id = :eventId) AS distance ");
+        sql.append("FROM events.event ORDER BY distance LIMIT :candidates) ");
+        sql.append("SELECT ").append(EVENT_COLUMNS).append(" ");
+        sql.append("FROM knn JOIN events.event e ON e.id = knn.id WHERE 1=1 ");
         sql.append("AND e.id != :eventId ");
-        sql.append("AND (e.embedding <=> '").append(embeddingLiteral).append("'::vector <= ")
+        sql.append("AND knn.distance <= ")
                 .append(distanceThreshold)
-                .append(") ");
+                .append(" ");
         sql.append("ORDER BY ");
-        sql.append("(e.embedding <=> '").append(embeddingLiteral).append("'::vector) ASC ");
+        sql.append("knn.distance ASC ");
         sql.append("LIMIT :limit");
 
         Query query = em.createNativeQuery(sql.toString(), Event.class);
         query.setParameter("limit", 20);
         query.setParameter("eventId", eventId);
+        query.setParameter("candidates", vectorSearchProperties.getCandidates());
 
         List<Event> events = query.getResultList();
 
@@ -603,4 +610,36 @@ public class EventService {
 
         return eventDTOs;
     }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    static String embeddingText(Event event) {
+        return embeddingText(event.getName(), event.getDescription());
+    }
+
+    private static String embeddingText(String name, String description) {
+        String textForEmbedding = name + name + name;
+        if (description != null && !description.isEmpty()) {
+            textForEmbedding += " " + description;
+        }
+        return textForEmbedding;
+    }
+
+    // SET LOCAL for the current transaction, so it has to run inside the search's transaction
+    private void setEfSearch(Integer requested) {
+        setEfSearch(requested, vectorSearchProperties.getCandidates());
+    }
+
+    private void setEfSearch(Integer requested, int candidates) {
+        em.createNativeQuery("SELECT set_config('hnsw.ef_search', :efSearch, true)")
+                .setParameter("efSearch", String.valueOf(vectorSearchProperties.efSearchFor(requested, candidates)))
+                .getSingleResult();
+    }
 }
@@ -0,0 +1,138 @@
+package com.unihub.app.service;
+
+import com.unihub.app.VectorSearchProperties;
+import com.unihub.app.model.EventEmbedding;
+import com.unihub.app.repository.EventEmbeddingRepo;
+import com.unihub.app.util.HnswIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-process HNSW graph over every event embedding, so event k-NN never ships a vector to
+ * Postgres. Loaded in the background at startup and kept current by EventService on writes.
+ * A periodic refresh reconciles the graph's ids with the database's, which picks up events
+ * created or deleted on other instances whatever order their ids committed in; edits made there
+ * only show up on restart. Callers fall back to pgvector while {@link #isReady()} is false.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventVectorIndex {
+    @Autowired
+    private EventEmbeddingRepo eventEmbeddingRepo;
+    @Autowired
+    private VectorSearchProperties vectorSearchProperties;
+
+    private volatile HnswIndex index;
+    private volatile boolean ready;
+
+    private static final int PAGE_SIZE = 500;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        VectorSearchProperties.Ann ann = vectorSearchProperties.getAnn();
+        if (!ann.isEnabled()) return;
+
+        index = new HnswIndex(ann.getDimensions(), ann.getM(), ann.getEfConstruction(), ann.getMaxTombstoneShare());
+        long start = System.currentTimeMillis();
+        loadAll();
+        ready = true;
+        log.info("Loaded {} event embeddings into the vector index in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedDelayString = "${search.vector.ann.refresh-interval:PT1M}")
+    public void refresh() {
+        if (!ready) return;
+
+        // taken before the database is read, so an id indexed after commit since isn't mistaken for a deleted one
+        int[] indexed = index.liveIds();
+        Set<Integer> stored = new HashSet<>(eventEmbeddingRepo.findIdsWithEmbedding());
+
+        int removed = 0;
+        for (int id : indexed) {
+            if (!stored.contains(id) && index.remove(id)) removed++;
+        }
+        Arrays.stream(indexed).forEach(stored::remove);
+        List<Integer> missing = List.copyOf(stored);
+        for (int from = 0; from < missing.size(); from += PAGE_SIZE) {
+            for (EventEmbedding event : eventEmbeddingRepo.findAllById(missing.subList(from, Math.min(missing.size(), from + PAGE_SIZE)))) {
+                if (event.getEmbedding() != null) index.addIfAbsent(event.getId(), event.getEmbedding());
+            }
+        }
+        if (removed > 0 || !missing.isEmpty()) {
+            log.info("Reconciled the vector index with the database, {} events added and {} removed", missing.size(), removed);
+        }
+    }
+
+    /**
+     * Indexes the event's embedding once the surrounding transaction commits, or right away
+     * when there is none.
+     */
+    public void upsert(Integer eventId, float[] embedding) {
+        if (index == null) return;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    index.add(eventId, embedding);
+                }
+            });
+        } else {
+            index.add(eventId, embedding);
+        }
+    }
+
+    /** Up to k events nearest to the query within maxDistance, nearest first. */
+    public List<HnswIndex.Neighbour> search(float[] query, int k, int efSearch, float maxDistance) {
+        return index.search(query, k, efSearch).stream()
+                .filter(n -> n.distance() <= maxDistance)
+                .toList();
+    }
+
+    /** Ids like {@link #search} around a stored event, excluding it, or null when it isn't indexed. */
+    public Integer[] similarTo(Integer eventId, int k, int efSearch, float maxDistance) {
+        float[] vector = index.vector(eventId);
+        if (vector == null) return null;
+        return ids(index.search(vector, k + 1, efSearch), eventId, maxDistance);
+    }
+
+    private void loadAll() {
+        int afterId = 0;
+        List<EventEmbedding> page;
+        do {
+            page = eventEmbeddingRepo.findTop500ByIdGreaterThanAndEmbeddingIsNotNullOrderByIdAsc(afterId);
+            for (EventEmbedding event : page) {
+                // an upsert that raced this page already holds the newer vector
+                index.addIfAbsent(event.getId(), event.getEmbedding());
+                afterId = event.getId();
+            }
+        } while (!page.isEmpty());
+    }
+
+    private static Integer[] ids(List<HnswIndex.Neighbour> neighbours, Integer excludedId, float maxDistance) {
+        return neighbours.stream()
+                .filter(n -> n.distance() <= maxDistance)
+                .map(HnswIndex.Neighbour::id)
+                .filter(id -> !id.equals(excludedId))
+                .toArray(Integer[]::new);
+    }
+}
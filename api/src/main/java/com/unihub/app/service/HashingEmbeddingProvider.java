@@ -0,0 +1,75 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EmbeddingProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Deterministic in-process embeddings for tests, load tests and running without the network.
+ * Words and their character trigrams are hashed into signed buckets (feature hashing), so texts
+ * sharing words or word fragments point the same way; there is no notion of meaning beyond that.
+ */
+@Service
+@ConditionalOnProperty(name = "embedding.provider", havingValue = "hashing")
+@RequiredArgsConstructor
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+
+    private final EmbeddingProperties embeddingProperties;
+
+    @Override
+    public String model() {
+        return "hashing-" + embeddingProperties.getHashing().getDimensions();
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(embed(text, embeddingProperties.getHashing().getDimensions()));
+        }
+        return embeddings;
+    }
+
+    static float[] embed(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{Alnum}]+")) {
+            if (word.isEmpty()) continue;
+            add(vector, word, 0, word.length(), 1f);
+
+            String padded = " " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                add(vector, padded, i, i + 3, TRIGRAM_WEIGHT);
+            }
+        }
+        return vector;
+    }
+
+    // the hash's top bit picks the sign, so collisions cancel out on average instead of piling up
+    private static void add(float[] vector, String text, int start, int end, float weight) {
+        long hash = fnv1a(text, start, end);
+        int bucket = (int) Long.remainderUnsigned(hash, vector.length);
+        vector[bucket] += hash < 0 ? -weight : weight;
+    }
+
+    // stable across JVMs and restarts, unlike identity hashes, so stored vectors stay valid
+    private static long fnv1a(String text, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // FNV's low bits mix poorly, fold the high bits in
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,116 @@
+package com.unihub.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.unihub.app.exception.IdempotencyKeyInUseException;
+import com.unihub.app.exception.IdempotencyKeyReusedException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Remembers the responses of recent requests sent with an Idempotency-Key header, so a client
+ * retrying one gets the first response back instead of running it again. Each key is tied to a
+ * hash of the request it came with, reusing it for another request is an error. Only successful
+ * responses are kept, a failed request can be retried with the same key.
+ *
+ * <p>Keys live in this instance's memory, bounded by http.idempotency.*.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final Cache<String, Entry> idempotencyCache;
+    private final ObjectMapper objectMapper;
+
+    /** A request's hash and its serialized response, incomplete while the request runs. */
+    public record Entry(String fingerprint, CompletableFuture<byte[]> response) {}
+
+    public record Outcome<T>(T body, boolean replayed) {
+        public HttpHeaders headers() {
+            HttpHeaders headers = new HttpHeaders();
+            if (replayed) headers.set(REPLAYED_HEADER, "true");
+            return headers;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Runs the action, or returns what it returned for the same key before. Without a key the
+     * action just runs. A key whose request is still running is rejected rather than waited on.
+     */
+    public <T, E extends Exception> Outcome<T> execute(String key, String operation, String fingerprint,
+                                                       Class<T> type, Action<T, E> action) throws E {
+        if (key == null || key.isBlank()) return new Outcome<>(action.run(), false);
+
+        String scopedKey = operation + ":" + key;
+        Entry entry = new Entry(fingerprint, new CompletableFuture<>());
+        Entry existing = idempotencyCache.asMap().putIfAbsent(scopedKey, entry);
+        if (existing != null) return replay(existing, fingerprint, type);
+
+        T body;
+        try {
+            body = action.run();
+        } catch (Exception | Error e) {
+            idempotencyCache.asMap().remove(scopedKey, entry);
+            entry.response().completeExceptionally(e);
+            throw e;
+        }
+        try {
+            entry.response().complete(objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            idempotencyCache.asMap().remove(scopedKey, entry);
+            log.warn("Couldn't keep the {} response for idempotency key {}", operation, key, e);
+        }
+        return new Outcome<>(body, false);
+    }
+
+    private <T> Outcome<T> replay(Entry existing, String fingerprint, Class<T> type) {
+        if (!existing.fingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException("This Idempotency-Key was already used for a different request");
+        }
+        if (!existing.response().isDone()) {
+            throw new IdempotencyKeyInUseException("A request with this Idempotency-Key is still being processed");
+        }
+
+        try {
+            return new Outcome<>(objectMapper.readValue(existing.response().join(), type), true);
+        } catch (CompletionException e) {
+            // failed in the moment before its entry was removed, the client can retry
+            throw new IdempotencyKeyInUseException("A request with this Idempotency-Key is still being processed");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** SHA-256 of the parts, objects as their JSON and byte arrays as they are. */
+    public String fingerprint(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(part instanceof byte[] bytes ? bytes : objectMapper.writeValueAsBytes(part));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Couldn't fingerprint the request", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.unihub.app.service;
+
+import com.unihub.app.util.EmbeddingResponseParser;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+@Service
+@ConditionalOnProperty(name = "embedding.provider", havingValue = "openai", matchIfMissing = true)
+public class OpenAIEmbeddingProvider implements EmbeddingProvider {
+    @Value("${openai.api-key}")
+    private String apiKey;
+
+    @Value("${openai.embedding-model:text-embedding-ada-002}")
+    private String model;
+
+    @Value("${openai.base-url:https://api.openai.com/v1}")
+    private String baseUrl;
+
+    // sizes the parsed arrays up front, responses of other sizes are still read correctly
+    @Value("${openai.embedding-dimensions:1536}")
+    private int dimensions;
+
+    private final RestTemplate restTemplate;
+
+    public OpenAIEmbeddingProvider(@Qualifier("openAIRestTemplate") RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * Embeds every text with a single call. The response is parsed as it streams in, straight
+     * into the returned arrays.
+     */
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        String url = baseUrl + "/embeddings";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + apiKey);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Map.of("model", model, "input", texts), headers);
+
+        float[][] embeddings = restTemplate.execute(url, HttpMethod.POST, restTemplate.httpEntityCallback(entity),
+                response -> EmbeddingResponseParser.parse(response.getBody(), texts.size(), dimensions));
+        return List.of(embeddings);
+    }
+}
@@ -1,50 +1,111 @@
 package com.unihub.app.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.unihub.app.EmbeddingBatchProperties;
+import com.unihub.app.util.MicroBatcher;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.*;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static com.unihub.app.util.VectorOperations.normalize;
+
 @Service
 public class OpenAIService {
     @Value("${openai.api-key}")
     private String apiKey;
 
+    @Value("${openai.base-url:https://api.openai.com/v1}")
+    private String baseUrl;
+
     private final RestTemplate restTemplate;
 
-    public OpenAIService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final Cache<String, float[]> embeddingCache;
 
-    public float[] generateEmbedding(String text) {
-        String url = "https://api.openai.com/v1/embeddings";
-        String model = "text-embedding-ada-002"; // Update as needed
+    private final EmbeddingStore embeddingStore;
 
-        String requestBody = String.format("{\"model\": \"%s\", \"input\": \"%s\"}", model, text);
+    private final EmbeddingProvider embeddingProvider;
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + apiKey);
-        headers.set("Content-Type", "application/json");
+    // null when every text is embedded on its own
+    private final MicroBatcher<String, float[]> embeddingBatcher;
 
-        HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
+    public OpenAIService(@Qualifier("openAIRestTemplate") RestTemplate restTemplate, Cache<String, float[]> embeddingCache, EmbeddingStore embeddingStore,
+                         EmbeddingBatchProperties embeddingBatchProperties, EmbeddingProvider embeddingProvider) {
+        this.restTemplate = restTemplate;
+        this.embeddingCache = embeddingCache;
+        this.embeddingStore = embeddingStore;
+        this.embeddingProvider = embeddingProvider;
+        this.embeddingBatcher = embeddingBatchProperties.isEnabled() && embeddingProvider.isRemote()
+                ? new MicroBatcher<>(embeddingProvider::embed, embeddingBatchProperties.getWindow(), embeddingBatchProperties.getMaxSize())
+                : null;
+    }
 
-        ResponseEntity<JsonNode> response = restTemplate.exchange(url, HttpMethod.POST, entity, JsonNode.class);
+    /**
+     * Embeds a user search query and returns it already normalized to unit length.
+     * Results are cached by model and normalized query text, so the returned array is
+     * shared between callers and must not be modified.
+     */
+    public float[] generateQueryEmbedding(String query) {
+        String normalizedQuery = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return embeddingCache.get(embeddingProvider.model() + "\u0000" + normalizedQuery, key -> normalize(generateEmbedding(normalizedQuery)));
+    }
 
-        JsonNode data = response.getBody().get("data").get(0);
-        JsonNode embeddingNode = data.get("embedding");
+    /**
+     * Embeds a text, batched with whatever other texts are requested at the same moment. The
+     * array is the caller's own to modify.
+     */
+    public float[] generateEmbedding(String text) {
+        String model = embeddingProvider.model();
+        float[] stored = embeddingStore.get(model, text);
+        if (stored != null) return stored;
+
+        float[] embedding;
+        if (embeddingBatcher != null) {
+            // concurrent callers asking for the same text share one result, so each gets a copy
+            embedding = embeddingBatcher.submit(text).join().clone();
+        } else {
+            embedding = embeddingProvider.embed(List.of(text)).get(0);
+        }
 
+        embeddingStore.put(model, text, embedding);
+        return embedding;
+    }
 
-        float[] embedding = new float[embeddingNode.size()];
-        for (int i = 0; i < embeddingNode.size(); i++) {
-            embedding[i] = (float) embeddingNode.get(i).asDouble();
+    /**
+     * Embeds many texts at once, for imports: stored embeddings are reused and the rest are sent
+     * to the provider together. The arrays are the caller's own to modify.
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        String model = embeddingProvider.model();
+        float[][] embeddings = new float[texts.size()][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings[i] = embeddingStore.get(model, texts.get(i));
+            if (embeddings[i] == null) missing.add(i);
         }
 
-        return embedding;
+        if (!missing.isEmpty()) {
+            List<float[]> generated = embeddingProvider.embed(missing.stream().map(texts::get).toList());
+            for (int i = 0; i < missing.size(); i++) {
+                int index = missing.get(i);
+                embeddings[index] = generated.get(i);
+                embeddingStore.put(model, texts.get(index), embeddings[index]);
+            }
+        }
+        return Arrays.asList(embeddings);
     }
 
+    /** The completion's answer, or null when OpenAI couldn't give one. */
     public String generateFastCompletion(String prompt) {
-        String url = "https://api.openai.com/v1/chat/completions";
+        String url = baseUrl + "/chat/completions";
 
         String requestBody = String.format(
                 "{\"model\": \"gpt-4o-mini\", \"messages\": [{\"role\": \"user\", \"content\": \"%s\"}], \"max_completion_tokens\": 100}",
@@ -66,8 +127,13 @@ public class OpenAIService {
             return expandedName;
         } catch (Exception e) {
             System.err.println("Query expansion failed: " + e.getMessage());
-            return "NONE";
+            // not "NONE", a failed call says nothing about the query
+            return null;
         }
     }
-}
 
+    @PreDestroy
+    public void close() {
+        if (embeddingBatcher != null) embeddingBatcher.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.unihub.app.service;
+
+import com.unihub.app.dto.request.AnswerRequest;
+import com.unihub.app.exception.*;
+import com.unihub.app.model.QuestionType;
+import com.unihub.app.model.RegistrationStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Writes an RSVP in at most four statements: one reads the event, the attendee and the event's
+ * questions together, one inserts the registration, whose (attendee_user_id, event_id) unique
+ * constraint turns away repeat RSVPs, one batch inserts the answers and one books the seats.
+ */
+@Component
+@RequiredArgsConstructor
+public class RsvpWriter {
+    private final EventCapacityService eventCapacityService;
+
+    public record Result(Integer registrationId, String eventName, boolean waitlisted) {}
+
+    private record QuestionInfo(QuestionType type, boolean required) {}
+
+    private static final String CONTEXT_SQL = """
+            SELECT e.id, e.name, e.max_tickets, u.id, u.first_name, u.last_name, q.id, q.type, q.required
+            FROM (SELECT 1) one
+            LEFT JOIN events.event e ON e.id = ?
+            LEFT JOIN events.app_user u ON u.email = ?
+            LEFT JOIN events.question q ON q.event_id = e.id
+            """;
+
+    private static final String INSERT_REGISTRATION_SQL = """
+            INSERT INTO events.registration (display_name, status, tickets, attendee_user_id, event_id, waitlist_seq)
+            VALUES (?, ?, ?, ?, ?, CASE WHEN ? THEN nextval('events.registration_waitlist_seq') END)
+            ON CONFLICT (attendee_user_id, event_id) DO NOTHING
+            RETURNING id
+            """;
+
+    private static final String INSERT_ANSWER_SQL = """
+            INSERT INTO events.answer (registration_id, question_id, single_answer, multi_answer)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    private static final String WAITLIST_SQL = """
+            UPDATE events.registration
+            SET status = 'WAITLISTED', waitlist_seq = nextval('events.registration_waitlist_seq')
+            WHERE id = ?
+            """;
+
+    /**
+     * Registers the attendee, on the waitlist when waitlisted is set. An approved RSVP whose
+     * seats turn out to be gone is waitlisted as well.
+     */
+    public Result write(Connection connection, Integer eventId, String userEmail, String displayName, int tickets,
+                        RegistrationStatus status, boolean waitlisted, List<AnswerRequest> answers) throws SQLException {
+        String eventName;
+        int maxTickets;
+        Integer attendeeId;
+        String attendeeName;
+        Map<Integer, QuestionInfo> questions = new HashMap<>();
+        try (PreparedStatement context = connection.prepareStatement(CONTEXT_SQL)) {
+            context.setInt(1, eventId);
+            context.setString(2, userEmail);
+            try (ResultSet rs = context.executeQuery()) {
+                rs.next();
+                if (rs.getObject(1) == null) throw new EventNotFoundException("Event not found");
+                if (rs.getObject(4) == null) throw new UserNotFoundException("User not found");
+                eventName = rs.getString(2);
+                maxTickets = rs.getInt(3);
+                attendeeId = rs.getInt(4);
+                attendeeName = rs.getString(5) + " " + rs.getString(6);
+                do {
+                    if (rs.getObject(7) != null) {
+                        questions.put(rs.getInt(7), new QuestionInfo(QuestionType.valueOf(rs.getString(8)), rs.getBoolean(9)));
+                    }
+                } while (rs.next());
+            }
+        }
+
+        if (tickets > maxTickets) throw new CapacityLimitReachedException("You can only request up to "+maxTickets+" tickets");
+        validateAnswers(questions, answers);
+
+        Integer registrationId;
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_REGISTRATION_SQL)) {
+            insert.setString(1, displayName != null ? displayName : attendeeName);
+            insert.setString(2, (waitlisted ? RegistrationStatus.WAITLISTED : status).name());
+            insert.setInt(3, tickets);
+            insert.setInt(4, attendeeId);
+            insert.setInt(5, eventId);
+            insert.setBoolean(6, waitlisted);
+            try (ResultSet rs = insert.executeQuery()) {
+                if (!rs.next()) throw new UserAlreadyRegisteredException("User is already registered for event");
+                registrationId = rs.getInt(1);
+            }
+        }
+
+        if (answers != null && !answers.isEmpty()) {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_ANSWER_SQL)) {
+                for (AnswerRequest answer : answers) {
+                    insert.setInt(1, registrationId);
+                    insert.setInt(2, answer.getQuestionId());
+                    insert.setString(3, answer.getSingleAnswer());
+                    if (answer.getMultiAnswer() != null) {
+                        insert.setArray(4, connection.createArrayOf("text", answer.getMultiAnswer().toArray()));
+                    } else {
+                        insert.setNull(4, Types.ARRAY);
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+
+        if (status == RegistrationStatus.APPROVED && !waitlisted && !eventCapacityService.tryBook(connection, eventId, tickets)) {
+            // the counter let this one in but the event filled up elsewhere
+            try (PreparedStatement update = connection.prepareStatement(WAITLIST_SQL)) {
+                update.setInt(1, registrationId);
+                update.executeUpdate();
+            }
+            waitlisted = true;
+        }
+        return new Result(registrationId, eventName, waitlisted);
+    }
+
+    private static void validateAnswers(Map<Integer, QuestionInfo> questions, List<AnswerRequest> answers) {
+        Set<Integer> answered = answers == null ? Set.of() :
+                answers.stream().map(AnswerRequest::getQuestionId).collect(Collectors.toSet());
+        for (Map.Entry<Integer, QuestionInfo> question : questions.entrySet()) {
+            if (question.getValue().required() && !answered.contains(question.getKey())) {
+                throw new MissingRequiredAnswersException("All required questions must be answered");
+            }
+        }
+
+        if (answers == null) return;
+        for (AnswerRequest answer : answers) {
+            // questions of other events aren't in the map either
+            QuestionInfo question = questions.get(answer.getQuestionId());
+            if (question == null) throw new QuestionNotFoundException("Invalid question");
+            if ((question.type() == QuestionType.MULTISELECT && answer.getMultiAnswer() == null)
+                    || ((question.type() == QuestionType.CHOICE || question.type() == QuestionType.TYPED) && answer.getSingleAnswer() == null)) {
+                throw new InvalidAnswerException("Your answers are invalid, please check it again");
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.unihub.app.service;
+
+import com.unihub.app.dto.EmailDTO;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * First come, first served waitlists of full events. A waitlisted registration takes the next
+ * value of events.registration_waitlist_seq as its place in line. Once seats are given back the
+ * head of the line is approved in batches, in the background, and told by email. New RSVPs join
+ * the line while anyone is on it, so freed seats aren't taken from under it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WaitlistService {
+    @Autowired
+    private EntityManager em;
+    @Autowired
+    private EventCapacityService eventCapacityService;
+    @Autowired
+    private EmailService emailService;
+
+    private final PlatformTransactionManager transactionManager;
+
+    // first key of pg_advisory_xact_lock(int, int), the second is the event id
+    private static final int LOCK_SPACE = 9;
+    private static final int BATCH_SIZE = 100;
+    // a booking the counter got wrong is retried this many times with the reloaded counter
+    private static final int MAX_ATTEMPTS = 3;
+
+    private record Promoted(Integer registrationId, String email, String eventName) {}
+    // drained when nobody is left in line after the batch
+    private record Batch(List<Promoted> promoted, boolean drained) {}
+
+    private final Set<Integer> scheduled = ConcurrentHashMap.newKeySet();
+    private final ExecutorService promoters = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** A place at the back of the line, for a registration about to be waitlisted. */
+    public long nextPlace() {
+        return ((Number) em.createNativeQuery("SELECT nextval('events.registration_waitlist_seq')").getSingleResult()).longValue();
+    }
+
+    /**
+     * Promotes from the event's waitlist once the transaction commits. Seats given back while a
+     * promotion is waiting to start are handed out by that same promotion.
+     */
+    public void promoteAfterCommit(Integer eventId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                schedule(eventId);
+            }
+        });
+    }
+
+    /**
+     * Queues new RSVPs behind a registration being waitlisted. It may have been waitlisted only
+     * because others were in line, then the promotion once the transaction commits seats it.
+     */
+    public void joinedAfterCommit(Integer eventId) {
+        eventCapacityService.joinedWaitlist(eventId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // seats freed from here on schedule a promotion of their own
+                if (eventCapacityService.hasFreeSeats(eventId)) schedule(eventId);
+            }
+        });
+    }
+
+    private void schedule(Integer eventId) {
+        if (!scheduled.add(eventId)) return;
+        promoters.execute(() -> {
+            // seats given back from here on schedule another promotion
+            scheduled.remove(eventId);
+            try {
+                promote(eventId);
+            } catch (RuntimeException e) {
+                log.warn("Failed to promote the waitlist of event {}", eventId, e);
+            }
+        });
+    }
+
+    /** Approves waitlisted registrations in order for as long as the next one fits. */
+    public int promote(Integer eventId) {
+        List<EmailDTO> emails = new ArrayList<>();
+        int attempts = 0;
+        Batch batch;
+        do {
+            // read before the line is, a registration waitlisted after this keeps new RSVPs out
+            int seen = eventCapacityService.waitlisted(eventId);
+            batch = new TransactionTemplate(transactionManager).execute(status -> {
+                Batch promoted = promoteBatch(eventId);
+                if (promoted == null) status.setRollbackOnly();
+                return promoted;
+            });
+            if (batch == null) {
+                if (++attempts == MAX_ATTEMPTS) break;
+                continue;
+            }
+            for (Promoted promoted : batch.promoted()) {
+                emails.add(new EmailDTO(promoted.email(), "A spot opened up for " + promoted.eventName() + " and you're off the waitlist! Check your registration status in your profile.", "Registration Confirmation"));
+            }
+            if (batch.drained()) eventCapacityService.drainedWaitlist(eventId, seen);
+        } while (batch == null || batch.promoted().size() == BATCH_SIZE);
+
+        if (!emails.isEmpty()) {
+            emailService.sendSimpleEmails(emails);
+            log.info("Promoted {} registrations off the waitlist of event {}", emails.size(), eventId);
+        }
+        return emails.size();
+    }
+
+    // the promoted head of the line, or null when the seats couldn't be booked after all
+    @SuppressWarnings("unchecked")
+    private Batch promoteBatch(Integer eventId) {
+        // one promotion per event at a time, across instances
+        em.createNativeQuery("SELECT pg_advisory_xact_lock(:space, :eventId)")
+                .setParameter("space", LOCK_SPACE)
+                .setParameter("eventId", eventId)
+                .getSingleResult();
+
+        List<Object[]> line = em.createNativeQuery("""
+                SELECT r.id, r.tickets, u.email, e.name
+                FROM events.registration r
+                JOIN events.app_user u ON u.id = r.attendee_user_id
+                JOIN events.event e ON e.id = r.event_id
+                WHERE r.event_id = :eventId AND r.status = 'WAITLISTED'
+                ORDER BY r.waitlist_seq
+                LIMIT :batchSize
+                """)
+                .setParameter("eventId", eventId)
+                .setParameter("batchSize", BATCH_SIZE)
+                .getResultList();
+
+        // nobody is passed over, the line stops at the first registration that doesn't fit
+        List<Promoted> promoted = new ArrayList<>();
+        int seats = 0;
+        for (Object[] row : line) {
+            int tickets = ((Number) row[1]).intValue();
+            if (!eventCapacityService.tryReserve(eventId, tickets)) break;
+            promoted.add(new Promoted((Integer) row[0], (String) row[2], (String) row[3]));
+            seats += tickets;
+        }
+        boolean drained = promoted.size() == line.size() && line.size() < BATCH_SIZE;
+        if (promoted.isEmpty()) return new Batch(promoted, drained);
+
+        if (!eventCapacityService.tryBook(eventId, seats)) return null;
+        em.createNativeQuery("""
+                UPDATE events.registration
+                SET status = 'APPROVED', waitlist_seq = NULL
+                WHERE id IN (:ids)
+                """)
+                .setParameter("ids", promoted.stream().map(Promoted::registrationId).toList())
+                .executeUpdate();
+        return new Batch(promoted, drained);
+    }
+
+    @PreDestroy
+    public void close() {
+        promoters.close();
+    }
+}
@@ -0,0 +1,62 @@
+package com.unihub.app.util;
+
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.SQLException;
+
+/**
+ * Driver-side value for the {@code vector} type. Once registered on a connection with
+ * {@code addDataType("vector", BinaryVector.class)} pgjdbc sends and receives it through
+ * {@link VectorCodec} instead of the text representation.
+ */
+public class BinaryVector extends PGobject implements PGBinaryObject {
+    private float[] vector;
+
+    public BinaryVector() {
+        type = "vector";
+    }
+
+    public BinaryVector(float[] vector) {
+        this();
+        this.vector = vector;
+    }
+
+    public float[] toArray() {
+        return vector;
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) {
+        vector = VectorCodec.decode(value, offset);
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return vector == null ? 0 : VectorCodec.lengthInBytes(vector);
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        VectorCodec.encode(vector, bytes, offset);
+    }
+
+    @Override
+    public void setValue(String value) throws SQLException {
+        try {
+            vector = value == null ? null : VectorCodec.parse(value);
+        } catch (NumberFormatException e) {
+            throw new SQLException("Invalid vector: " + value, e);
+        }
+    }
+
+    @Override
+    public String getValue() {
+        return vector == null ? null : VectorCodec.format(vector);
+    }
+
+    @Override
+    public boolean isNull() {
+        return vector == null;
+    }
+}
@@ -0,0 +1,137 @@
+package com.unihub.app.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seats left for one event, taken and given back with compare-and-set so concurrent callers
+ * never take more than there are. Seats taken by transactions that haven't finished are counted
+ * as held, which lets a resync from the database's count leave them out. While the event has a
+ * waitlist, new RSVPs join it whatever is left, so seats given back go to the head of the line.
+ *
+ * <p>Remaining and held seats share one word, so a reservation and a resync never see one
+ * without the other. A resync also leaves out seats confirmed since it started reading, and seats
+ * of unregistrations still in flight, either of which the count it read may or may not show.
+ */
+public class CapacityCounter {
+    // remaining seats in the high half, held seats in the low half
+    private final AtomicLong seats;
+    // every seat ever confirmed, a resync subtracts those confirmed after its mark
+    private final AtomicLong confirmed = new AtomicLong();
+    // seats of unregistrations whose transactions haven't finished
+    private final AtomicInteger releasing = new AtomicInteger();
+    // registrations waitlisted since the line was last drained
+    private final AtomicInteger waitlisted = new AtomicInteger();
+    private volatile long syncedAt;
+    private volatile boolean expired;
+
+    public CapacityCounter(int remaining) {
+        this.seats = new AtomicLong(pack(remaining, 0));
+        this.syncedAt = System.nanoTime();
+    }
+
+    /** Takes the seats if that many are left, they stay held until confirmed or cancelled. */
+    public boolean tryReserve(int tickets) {
+        long word;
+        do {
+            word = seats.get();
+            if (remaining(word) < tickets) return false;
+        } while (!seats.compareAndSet(word, pack(remaining(word) - tickets, held(word) + tickets)));
+        return true;
+    }
+
+    /** The reservation's transaction committed, the database now counts the seats. */
+    public void confirm(int tickets) {
+        // counted before the hold goes, so a resync in between leaves the seats out twice rather than not at all
+        confirmed.addAndGet(tickets);
+        seats.getAndUpdate(word -> pack(remaining(word), held(word) - tickets));
+    }
+
+    /** The reservation's transaction rolled back, the seats are free again. */
+    public void cancel(int tickets) {
+        seats.getAndUpdate(word -> pack(remaining(word) + tickets, held(word) - tickets));
+    }
+
+    /** An unregistration is giving seats back, resyncs leave them out until its transaction ends. */
+    public void releasing(int tickets) {
+        releasing.addAndGet(tickets);
+    }
+
+    /** Seats given back by a committed unregistration. */
+    public void free(int tickets) {
+        seats.getAndUpdate(word -> pack(remaining(word) + tickets, held(word)));
+        releasing.addAndGet(-tickets);
+    }
+
+    /** The unregistration rolled back, its seats stay taken. */
+    public void keep(int tickets) {
+        releasing.addAndGet(-tickets);
+    }
+
+    /** Taken before the database's count is read, and handed to the resync with it. */
+    public long syncMark() {
+        return confirmed.get();
+    }
+
+    /** Takes the database's count of free seats, less what is held or changed since {@code mark}. */
+    public void resync(int free, long mark) {
+        long word;
+        int remaining;
+        do {
+            word = seats.get();
+            remaining = free - held(word) - releasing.get() - (int) (confirmed.get() - mark);
+        } while (!seats.compareAndSet(word, pack(remaining, held(word))));
+        syncedAt = System.nanoTime();
+        expired = false;
+    }
+
+    /** The event's capacity changed or the count was wrong, the next caller resyncs first. */
+    public void expire() {
+        expired = true;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /** A registration joined the waitlist, new RSVPs queue behind it until the line is drained. */
+    public void joinedWaitlist() {
+        waitlisted.incrementAndGet();
+    }
+
+    /**
+     * The promoter emptied the line it read after seeing {@code seen} joins. One that joined
+     * since may not have been visible to it, then the line is kept.
+     */
+    public boolean drainedWaitlist(int seen) {
+        return waitlisted.compareAndSet(seen, 0);
+    }
+
+    public boolean syncedWithin(long nanos) {
+        return System.nanoTime() - syncedAt < nanos;
+    }
+
+    public int remaining() {
+        return remaining(seats.get());
+    }
+
+    public int held() {
+        return held(seats.get());
+    }
+
+    public int waitlisted() {
+        return waitlisted.get();
+    }
+
+    private static long pack(int remaining, int held) {
+        return ((long) remaining << 32) | (held & 0xFFFFFFFFL);
+    }
+
+    private static int remaining(long word) {
+        return (int) (word >> 32);
+    }
+
+    private static int held(long word) {
+        return (int) word;
+    }
+}
@@ -0,0 +1,116 @@
+package com.unihub.app.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the requests in flight to one upstream, the per-route limit the JDK HttpClient lacks. A
+ * permit is held until the response is closed, since the body is streamed from the connection.
+ *
+ * <p>Publishes http.client.pool.active, http.client.pool.pending and http.client.pool.acquire
+ * tagged with the upstream.
+ */
+public class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor {
+    private final String upstream;
+    private final Semaphore permits;
+    private final int maxConcurrentRequests;
+    private final Duration acquireTimeout;
+    private final Timer acquire;
+
+    public ConcurrencyLimitInterceptor(String upstream, int maxConcurrentRequests, Duration acquireTimeout, MeterRegistry meterRegistry) {
+        this.upstream = upstream;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.acquireTimeout = acquireTimeout;
+
+        Gauge.builder("http.client.pool.active", permits, p -> maxConcurrentRequests - p.availablePermits())
+                .description("Requests in flight to the upstream")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("http.client.pool.pending", permits, Semaphore::getQueueLength)
+                .description("Requests waiting for a free slot")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("http.client.pool.max", () -> maxConcurrentRequests)
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        this.acquire = Timer.builder("http.client.pool.acquire")
+                .description("Time spent waiting for a free slot")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IOException("All " + maxConcurrentRequests + " connections to " + upstream + " stayed busy for " + acquireTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a connection to " + upstream, e);
+        } finally {
+            acquire.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            return new PermitReleasingResponse(execution.execute(request, body));
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private class PermitReleasingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PermitReleasingResponse(ClientHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (released.compareAndSet(false, true)) permits.release();
+            }
+        }
+    }
+}
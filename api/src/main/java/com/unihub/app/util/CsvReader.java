@@ -0,0 +1,77 @@
+package com.unihub.app.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 records one at a time: comma separated, fields optionally quoted, quotes inside
+ * quoted fields doubled, and quoted fields free to span lines. Both CRLF and LF end a record.
+ * An unquoted empty field reads as null, a quoted one as the empty string.
+ */
+public class CsvReader {
+    private final Reader in;
+    private int peeked = -2;
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /** The next record's fields, or null at the end of the input. */
+    public List<String> next() throws IOException {
+        int c = read();
+        if (c == -1) return null;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (c == '"' && field.isEmpty() && !quoted) {
+                quoted = true;
+                readQuoted(field);
+                c = read();
+                continue;
+            }
+            if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                fields.add(quoted || !field.isEmpty() ? field.toString() : null);
+                field.setLength(0);
+                quoted = false;
+                if (c == ',') {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r' && peek() == '\n') read();
+                return fields;
+            }
+            field.append((char) c);
+            c = read();
+        }
+    }
+
+    private void readQuoted(StringBuilder field) throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) throw new IOException("CSV input ends inside a quoted field");
+            if (c == '"') {
+                if (peek() != '"') return;
+                read();
+            }
+            field.append((char) c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = in.read();
+        return peeked;
+    }
+}
@@ -0,0 +1,138 @@
+package com.unihub.app.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streams an embeddings endpoint response straight into float arrays, without building the
+ * JsonNode tree of one DoubleNode per value. Fields other than data[].index and
+ * data[].embedding are skipped, in whatever order they arrive.
+ */
+public class EmbeddingResponseParser {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // powers of ten a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private EmbeddingResponseParser() {}
+
+    /**
+     * One embedding per input, placed by its index. expectedDimensions sizes the arrays up front;
+     * a response with other dimensions is still read correctly, at the cost of a copy.
+     */
+    public static float[][] parse(InputStream body, int inputs, int expectedDimensions) throws IOException {
+        float[][] embeddings = new float[inputs][];
+        try (JsonParser parser = JSON.createParser(body)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("data")) {
+                    expect(parser.currentToken(), JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readItem(parser, embeddings, expectedDimensions);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        for (int i = 0; i < inputs; i++) {
+            if (embeddings[i] == null) throw new IOException("Embedding response has no embedding for input " + i);
+        }
+        return embeddings;
+    }
+
+    private static void readItem(JsonParser parser, float[][] embeddings, int expectedDimensions) throws IOException {
+        int index = -1;
+        float[] embedding = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("index")) {
+                index = parser.getIntValue();
+            } else if (field.equals("embedding")) {
+                expect(value, JsonToken.START_ARRAY);
+                embedding = readVector(parser, expectedDimensions);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (index < 0 || index >= embeddings.length || embedding == null) {
+            throw new IOException("Embedding response has an item without a valid index and embedding");
+        }
+        embeddings[index] = embedding;
+    }
+
+    private static float[] readVector(JsonParser parser, int expectedDimensions) throws IOException {
+        float[] vector = new float[expectedDimensions];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                throw new IOException("Embedding holds a " + token + " instead of a number");
+            }
+            if (size == vector.length) vector = Arrays.copyOf(vector, Math.max(16, size * 2));
+            vector[size++] = (float) parseDouble(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+
+    /**
+     * Parses a JSON number from the parser's buffer, which Jackson would first copy into a String.
+     * Values with up to 15 significant digits and small exponents, which covers what the embeddings
+     * endpoint sends, are exact in double arithmetic (Clinger's fast path); the rest go through
+     * Double.parseDouble. Either way the result equals Double.parseDouble of the text.
+     */
+    static double parseDouble(char[] text, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = text[i] == '-';
+        if (negative) i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        for (; i < end && text[i] >= '0' && text[i] <= '9'; i++) {
+            if (digits > 0 || text[i] != '0') digits++;
+            mantissa = mantissa * 10 + (text[i] - '0');
+            if (digits > 15) return Double.parseDouble(new String(text, offset, length));
+        }
+        if (i < end && text[i] == '.') {
+            for (i++; i < end && text[i] >= '0' && text[i] <= '9'; i++) {
+                if (digits > 0 || text[i] != '0') digits++;
+                mantissa = mantissa * 10 + (text[i] - '0');
+                exponent--;
+                if (digits > 15) return Double.parseDouble(new String(text, offset, length));
+            }
+        }
+        if (i < end && (text[i] == 'e' || text[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && text[i] == '-';
+            if (i < end && (text[i] == '-' || text[i] == '+')) i++;
+            int explicit = 0;
+            for (; i < end && text[i] >= '0' && text[i] <= '9' && explicit < 1000; i++) {
+                explicit = explicit * 10 + (text[i] - '0');
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end || exponent < -22 || exponent > 22) return Double.parseDouble(new String(text, offset, length));
+
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) throw new IOException("Expected " + expected + " in embedding response but got " + actual);
+    }
+}
@@ -1,33 +0,0 @@
-package com.unihub.app.util;
-
-import jakarta.persistence.AttributeConverter;
-import jakarta.persistence.Converter;
-import java.util.Arrays;
-
-@Converter
-public class FloatArrayConverter implements AttributeConverter<float[], String> {
-    @Override
-    public String convertToDatabaseColumn(float[] attribute) {
-        if (attribute == null) return null;
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < attribute.length; i++) {
-            sb.append(attribute[i]);
-            if (i < attribute.length - 1) sb.append(",");
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-
-    @Override
-    public float[] convertToEntityAttribute(String dbData) {
-        if (dbData == null || dbData.isEmpty()) return null;
-        String cleaned = dbData.replace("[", "").replace("]", "");
-        String[] parts = cleaned.split(",");
-        float[] array = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            array[i] = Float.parseFloat(parts[i]);
-        }
-        return array;
-    }
-}
-
@@ -0,0 +1,408 @@
+package com.unihub.app.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest neighbour index (HNSW, Malkov and Yashunin) over unit vectors using cosine
+ * distance. Vectors live off-heap in direct buffers, only the graph links stay on the heap.
+ *
+ * <p>Re-adding an id or removing it tombstones the old node: it keeps routing searches but is
+ * never returned. Once tombstones make up more than maxTombstoneShare of the nodes, the graph is
+ * rebuilt from the live ones under the write lock, which keeps the rebuilds amortized.
+ *
+ * <p>Searches run concurrently; adds and removes take an exclusive lock.
+ */
+public class HnswIndex {
+    private static final int CHUNK_NODES = 1024;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxLevelZeroLinks;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final double maxTombstoneShare;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private final Map<Integer, Integer> nodeById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int[] ids = new int[CHUNK_NODES];
+    private int[][][] links = new int[CHUNK_NODES][][];
+    private int nodeCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimensions, int m, int efConstruction) {
+        this(dimensions, m, efConstruction, 0.2);
+    }
+
+    public HnswIndex(int dimensions, int m, int efConstruction, double maxTombstoneShare) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxLevelZeroLinks = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.maxTombstoneShare = maxTombstoneShare;
+    }
+
+    public record Neighbour(int id, float distance) {}
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Replaced and removed nodes still in the graph. */
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return nodeCount - nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The ids of the live vectors. */
+    public int[] liveIds() {
+        lock.readLock().lock();
+        try {
+            return nodeById.keySet().stream().mapToInt(Integer::intValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(int id) {
+        lock.readLock().lock();
+        try {
+            return nodeById.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public float[] vector(int id) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeById.get(id);
+            if (node == null) return null;
+            float[] vector = new float[dimensions];
+            chunks.get(node / CHUNK_NODES).get((node % CHUNK_NODES) * dimensions, vector);
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeById.remove(id);
+            if (node == null) return false;
+            deleted.set(node);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(int id, float[] vector) {
+        insert(id, vector, true);
+    }
+
+    /**
+     * Adds the vector unless the id is already indexed, so a bulk load never overwrites a newer
+     * vector added concurrently.
+     */
+    public boolean addIfAbsent(int id, float[] vector) {
+        return insert(id, vector, false);
+    }
+
+    private boolean insert(int id, float[] vector, boolean replace) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!replace && nodeById.containsKey(id)) return false;
+            Integer previous = nodeById.remove(id);
+            if (previous != null) deleted.set(previous);
+
+            link(id, vector);
+            if (previous != null) compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // adds a node for the id, under the write lock
+    private void link(int id, float[] vector) {
+        int node = allocate(id, vector);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) links[node][l] = new int[0];
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            nodeById.put(id, node);
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> found = searchLayer(vector, current, efConstruction, l);
+            int maxLinks = l == 0 ? maxLevelZeroLinks : m;
+            int[] selected = selectNeighbours(toAscending(found), m);
+            links[node][l] = selected;
+
+            for (int neighbour : selected) {
+                connect(neighbour, node, l, maxLinks);
+            }
+            current = closest(found);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        nodeById.put(id, node);
+    }
+
+    // rebuilds the graph from the live nodes once tombstones pass their share, under the write lock
+    private void compactIfNeeded() {
+        int tombstones = nodeCount - nodeById.size();
+        if (tombstones <= nodeCount * maxTombstoneShare) return;
+
+        List<FloatBuffer> oldChunks = new ArrayList<>(chunks);
+        int[] oldIds = ids;
+        int oldNodeCount = nodeCount;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+
+        chunks.clear();
+        nodeById.clear();
+        deleted.clear();
+        ids = new int[Math.max(CHUNK_NODES, oldNodeCount - tombstones)];
+        links = new int[ids.length][][];
+        nodeCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+
+        float[] vector = new float[dimensions];
+        for (int node = 0; node < oldNodeCount; node++) {
+            if (oldDeleted.get(node)) continue;
+            oldChunks.get(node / CHUNK_NODES).get((node % CHUNK_NODES) * dimensions, vector);
+            link(oldIds[node], vector);
+        }
+    }
+
+    /**
+     * The k live vectors closest to the query, nearest first. ef is the size of the dynamic
+     * candidate list at the bottom layer, it is raised to k if lower.
+     */
+    public List<Neighbour> search(float[] query, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) return List.of();
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(query, current, l);
+            }
+
+            List<Candidate> found = toAscending(searchLayer(query, current, Math.max(ef, k), 0));
+            List<Neighbour> result = new ArrayList<>(k);
+            for (Candidate candidate : found) {
+                if (deleted.get(candidate.node)) continue;
+                result.add(new Neighbour(ids[candidate.node], candidate.distance));
+                if (result.size() == k) break;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private record Candidate(int node, float distance) {}
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::distance);
+
+    private int allocate(int id, float[] vector) {
+        int node = nodeCount++;
+        if (node == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            links = Arrays.copyOf(links, links.length * 2);
+        }
+        if (node / CHUNK_NODES == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_NODES * dimensions * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer());
+        }
+        chunks.get(node / CHUNK_NODES).put((node % CHUNK_NODES) * dimensions, vector);
+        ids[node] = id;
+        return node;
+    }
+
+    private float distance(float[] query, int node) {
+        FloatBuffer chunk = chunks.get(node / CHUNK_NODES);
+        int offset = (node % CHUNK_NODES) * dimensions;
+        // independent accumulators so the loop isn't bound by the latency of a single add chain
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += query[i] * chunk.get(offset + i);
+            s1 += query[i + 1] * chunk.get(offset + i + 1);
+            s2 += query[i + 2] * chunk.get(offset + i + 2);
+            s3 += query[i + 3] * chunk.get(offset + i + 3);
+        }
+        for (; i < dimensions; i++) {
+            s0 += query[i] * chunk.get(offset + i);
+        }
+        return 1 - (s0 + s1 + s2 + s3);
+    }
+
+    private float distance(int a, int b) {
+        FloatBuffer chunkA = chunks.get(a / CHUNK_NODES);
+        FloatBuffer chunkB = chunks.get(b / CHUNK_NODES);
+        int offsetA = (a % CHUNK_NODES) * dimensions;
+        int offsetB = (b % CHUNK_NODES) * dimensions;
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += chunkA.get(offsetA + i) * chunkB.get(offsetB + i);
+            s1 += chunkA.get(offsetA + i + 1) * chunkB.get(offsetB + i + 1);
+            s2 += chunkA.get(offsetA + i + 2) * chunkB.get(offsetB + i + 2);
+            s3 += chunkA.get(offsetA + i + 3) * chunkB.get(offsetB + i + 3);
+        }
+        for (; i < dimensions; i++) {
+            s0 += chunkA.get(offsetA + i) * chunkB.get(offsetB + i);
+        }
+        return 1 - (s0 + s1 + s2 + s3);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : links[current][level]) {
+                float d = distance(query, neighbour);
+                if (d < currentDistance) {
+                    current = neighbour;
+                    currentDistance = d;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // returns a max-heap (farthest on top) of at most ef nodes
+    private PriorityQueue<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(nodeCount);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> found = new PriorityQueue<>(NEAREST_FIRST.reversed());
+
+        Candidate first = new Candidate(start, distance(query, start));
+        visited.set(start);
+        candidates.add(first);
+        found.add(first);
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (candidate.distance > found.peek().distance && found.size() >= ef) break;
+
+            for (int neighbour : links[candidate.node][level]) {
+                if (visited.get(neighbour)) continue;
+                visited.set(neighbour);
+
+                float d = distance(query, neighbour);
+                if (found.size() < ef || d < found.peek().distance) {
+                    Candidate next = new Candidate(neighbour, d);
+                    candidates.add(next);
+                    found.add(next);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+        return found;
+    }
+
+    // the heuristic from the paper: skip candidates closer to an already selected neighbour than to the base,
+    // then top up with the skipped ones so sparse regions still get m links
+    private int[] selectNeighbours(List<Candidate> ascending, int count) {
+        List<Candidate> selected = new ArrayList<>(count);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : ascending) {
+            if (selected.size() == count) break;
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (distance(candidate.node, chosen.node) < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) selected.add(candidate);
+            else skipped.add(candidate);
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < count; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected.stream().mapToInt(Candidate::node).toArray();
+    }
+
+    private void connect(int node, int neighbour, int level, int maxLinks) {
+        int[] existing = links[node][level];
+        int[] extended = Arrays.copyOf(existing, existing.length + 1);
+        extended[existing.length] = neighbour;
+
+        if (extended.length <= maxLinks) {
+            links[node][level] = extended;
+            return;
+        }
+
+        List<Candidate> ascending = new ArrayList<>(extended.length);
+        for (int candidate : extended) {
+            ascending.add(new Candidate(candidate, distance(node, candidate)));
+        }
+        ascending.sort(NEAREST_FIRST);
+        links[node][level] = selectNeighbours(ascending, maxLinks);
+    }
+
+    private static List<Candidate> toAscending(PriorityQueue<Candidate> found) {
+        List<Candidate> ascending = new ArrayList<>(found);
+        ascending.sort(NEAREST_FIRST);
+        return ascending;
+    }
+
+    private static int closest(PriorityQueue<Candidate> found) {
+        Candidate closest = null;
+        for (Candidate candidate : found) {
+            if (closest == null || candidate.distance < closest.distance) closest = candidate;
+        }
+        return closest.node;
+    }
+}
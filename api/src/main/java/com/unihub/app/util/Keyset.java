@@ -0,0 +1,135 @@
+package com.unihub.app.util;
+
+import com.unihub.app.exception.InvalidCursorException;
+import jakarta.persistence.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Keyset pagination over a fixed list of sort keys, the last of which has to be unique. A page
+ * ends with an opaque cursor holding every sort key of its last row, and the next page starts
+ * strictly after that row, so ties are neither skipped nor repeated and deep pages cost the same
+ * as the first.
+ *
+ * <p>When all keys sort the same way the seek condition is a single row-value comparison, which
+ * Postgres answers from a composite index on the same columns. Mixed directions fall back to the
+ * expanded form, with a bound on the first key so its index can still be used.
+ */
+public class Keyset {
+    public enum Direction { ASC, DESC }
+
+    public enum KeyType {
+        INTEGER(Integer::valueOf),
+        DOUBLE(Double::valueOf),
+        INSTANT(Instant::parse);
+
+        private final Function<String, Object> parser;
+
+        KeyType(Function<String, Object> parser) {
+            this.parser = parser;
+        }
+    }
+
+    public record Key(String expression, Direction direction, KeyType type) {}
+
+    public static Key asc(String expression, KeyType type) {
+        return new Key(expression, Direction.ASC, type);
+    }
+
+    public static Key desc(String expression, KeyType type) {
+        return new Key(expression, Direction.DESC, type);
+    }
+
+    private static final String PARAMETER_PREFIX = "cursor";
+
+    // identifies the sort, so a cursor issued for one ordering is never applied to another
+    private final String name;
+    private final List<Key> keys;
+
+    public Keyset(String name, Key... keys) {
+        this.name = name;
+        this.keys = List.of(keys);
+    }
+
+    public String orderBy() {
+        return keys.stream()
+                .map(key -> key.expression() + " " + key.direction())
+                .collect(Collectors.joining(", "));
+    }
+
+    /** Condition selecting the rows after the cursor, bind the cursor with {@link #bind}. */
+    public String seek() {
+        boolean sameDirection = keys.stream().allMatch(key -> key.direction() == keys.get(0).direction());
+        if (sameDirection) {
+            String columns = keys.stream().map(Key::expression).collect(Collectors.joining(", "));
+            String parameters = IntStream.range(0, keys.size()).mapToObj(Keyset::parameter).collect(Collectors.joining(", "));
+            return "(" + columns + ") " + after(keys.get(0)) + " (" + parameters + ")";
+        }
+
+        // a > :c0 OR (a = :c0 AND (b < :c1 OR (b = :c1 AND c > :c2)))
+        StringBuilder expanded = new StringBuilder();
+        int last = keys.size() - 1;
+        for (int i = 0; i < last; i++) {
+            Key key = keys.get(i);
+            expanded.append("(").append(key.expression()).append(" ").append(after(key)).append(" ").append(parameter(i))
+                    .append(" OR (").append(key.expression()).append(" = ").append(parameter(i)).append(" AND ");
+        }
+        expanded.append(keys.get(last).expression()).append(" ").append(after(keys.get(last))).append(" ").append(parameter(last));
+        expanded.append("))".repeat(last));
+
+        Key first = keys.get(0);
+        return first.expression() + " " + after(first) + "= " + parameter(0) + " AND " + expanded;
+    }
+
+    public void bind(Query query, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            query.setParameter(PARAMETER_PREFIX + i, values[i]);
+        }
+    }
+
+    /** The cursor for a row, values given in key order. */
+    public String encode(Object... values) {
+        if (values.length != keys.size()) {
+            throw new IllegalArgumentException("Expected " + keys.size() + " cursor values but got " + values.length);
+        }
+        String plain = name + "\n" + Arrays.stream(values).map(String::valueOf).collect(Collectors.joining("\n"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Object[] decode(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", -1);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("The cursor is malformed");
+        }
+        if (parts.length != keys.size() + 1 || !parts[0].equals(name)) {
+            throw new InvalidCursorException("The cursor does not belong to this search, start again without it");
+        }
+
+        Object[] values = new Object[keys.size()];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                values[i] = keys.get(i).type().parser.apply(parts[i + 1]);
+            } catch (RuntimeException e) {
+                throw new InvalidCursorException("The cursor is malformed");
+            }
+        }
+        return values;
+    }
+
+    private static String after(Key key) {
+        return key.direction() == Direction.ASC ? ">" : "<";
+    }
+
+    private static String parameter(int index) {
+        return ":" + PARAMETER_PREFIX + index;
+    }
+}
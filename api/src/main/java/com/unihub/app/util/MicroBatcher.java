@@ -0,0 +1,104 @@
+package com.unihub.app.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Collects keys submitted by concurrent callers and loads them with one call per batch. A batch
+ * is sent once it holds maxSize keys or when the window since its first key has passed, whichever
+ * comes first. A key already waiting or being loaded is not queued again, its callers share the
+ * pending result.
+ *
+ * <p>The loader runs on virtual threads and has to return one value per key, in key order.
+ */
+public class MicroBatcher<K, V> implements AutoCloseable {
+    private record Pending<K, V>(K key, CompletableFuture<V> result) {}
+
+    private final Function<List<K>, List<V>> loader;
+    private final long windowNanos;
+    private final int maxSize;
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("micro-batcher-timer").factory());
+    private final ExecutorService loaders = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Object lock = new Object();
+    private List<Pending<K, V>> batch = new ArrayList<>();
+    private ScheduledFuture<?> windowEnd;
+
+    public MicroBatcher(Function<List<K>, List<V>> loader, Duration window, int maxSize) {
+        this.loader = loader;
+        this.windowNanos = window.toNanos();
+        this.maxSize = maxSize;
+    }
+
+    public CompletableFuture<V> submit(K key) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) return existing;
+        result.whenComplete((value, error) -> inFlight.remove(key, result));
+
+        List<Pending<K, V>> full = null;
+        synchronized (lock) {
+            batch.add(new Pending<>(key, result));
+            if (batch.size() >= maxSize) {
+                full = takeBatch();
+            } else if (batch.size() == 1) {
+                windowEnd = timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) load(full);
+        return result;
+    }
+
+    /** Sends whatever is waiting without waiting for the window. */
+    public void flush() {
+        List<Pending<K, V>> taken;
+        synchronized (lock) {
+            if (batch.isEmpty()) return;
+            taken = takeBatch();
+        }
+        load(taken);
+    }
+
+    // callers hold the lock
+    private List<Pending<K, V>> takeBatch() {
+        List<Pending<K, V>> taken = batch;
+        batch = new ArrayList<>();
+        if (windowEnd != null) {
+            windowEnd.cancel(false);
+            windowEnd = null;
+        }
+        return taken;
+    }
+
+    private void load(List<Pending<K, V>> taken) {
+        loaders.execute(() -> {
+            try {
+                List<V> values = loader.apply(taken.stream().map(Pending::key).toList());
+                if (values.size() != taken.size()) {
+                    throw new IllegalStateException("Loaded " + values.size() + " values for " + taken.size() + " keys");
+                }
+                for (int i = 0; i < taken.size(); i++) {
+                    taken.get(i).result().complete(values.get(i));
+                }
+            } catch (Throwable e) {
+                for (Pending<K, V> pending : taken) {
+                    pending.result().completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        flush();
+        timer.shutdownNow();
+        loaders.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.unihub.app.util;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Immutable word-prefix index for typeahead. Every query word has to be a prefix of some word of
+ * a document, so "univ of mich" finds "University of Michigan-Ann Arbor". Words are lowercased
+ * and stripped of accents, and filler words are ignored on both sides.
+ *
+ * <p>The vocabulary is sorted, so the words a prefix covers are one contiguous range of it.
+ * Matches come back in the order the documents were given.
+ */
+public class PrefixIndex<T> {
+    private static final Set<String> STOPWORDS = Set.of("of", "the", "at", "and", "in", "for");
+
+    private final List<T> documents;
+    private final String[] words;
+    // positions into documents, one entry per word
+    private final BitSet[] postings;
+
+    public PrefixIndex(List<T> documents, Function<T, String> text) {
+        this.documents = List.copyOf(documents);
+
+        TreeMap<String, BitSet> vocabulary = new TreeMap<>();
+        for (int i = 0; i < this.documents.size(); i++) {
+            for (String word : words(text.apply(this.documents.get(i)))) {
+                vocabulary.computeIfAbsent(word, w -> new BitSet()).set(i);
+            }
+        }
+        this.words = vocabulary.keySet().toArray(String[]::new);
+        this.postings = vocabulary.values().toArray(BitSet[]::new);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /** Documents holding a word starting with every query word, empty when the query has none. */
+    public List<T> search(String query) {
+        List<String> prefixes = words(query);
+        if (prefixes.isEmpty()) return List.of();
+
+        BitSet matches = null;
+        for (String prefix : prefixes) {
+            BitSet covered = new BitSet();
+            int start = Arrays.binarySearch(words, prefix);
+            if (start < 0) start = -start - 1;
+            for (int i = start; i < words.length && words[i].startsWith(prefix); i++) {
+                covered.or(postings[i]);
+            }
+
+            if (matches == null) {
+                matches = covered;
+            } else {
+                matches.and(covered);
+            }
+            if (matches.isEmpty()) return List.of();
+        }
+
+        List<T> results = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            results.add(documents.get(i));
+        }
+        return results;
+    }
+
+    static List<String> words(String text) {
+        if (text == null) return List.of();
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+
+        List<String> words = new ArrayList<>();
+        for (String word : folded.split("[^\\p{Alnum}]+")) {
+            if (!word.isEmpty() && !STOPWORDS.contains(word)) words.add(word);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,71 @@
+package com.unihub.app.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * pgvector's binary wire format (vector_send / vector_recv): a 2 byte dimension count,
+ * 2 unused bytes, then every component as a big-endian float4.
+ */
+public class VectorCodec {
+    public static final int HEADER_BYTES = 4;
+
+    public static int lengthInBytes(float[] vector) {
+        return HEADER_BYTES + vector.length * Float.BYTES;
+    }
+
+    public static void encode(float[] vector, byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, lengthInBytes(vector));
+        buffer.putShort((short) vector.length);
+        buffer.putShort((short) 0);
+        buffer.asFloatBuffer().put(vector);
+    }
+
+    public static byte[] encode(float[] vector) {
+        byte[] bytes = new byte[lengthInBytes(vector)];
+        encode(vector, bytes, 0);
+        return bytes;
+    }
+
+    public static float[] decode(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        int dimensions = Short.toUnsignedInt(buffer.getShort());
+        buffer.getShort();
+
+        float[] vector = new float[dimensions];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    // text format fallback for results the driver receives before a statement is server-prepared
+    public static float[] parse(String text) {
+        int start = text.indexOf('[') + 1;
+        int end = text.lastIndexOf(']');
+        if (end <= start) return new float[0];
+
+        int dimensions = 1;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ',') dimensions++;
+        }
+
+        float[] vector = new float[dimensions];
+        int from = start;
+        for (int i = 0; i < dimensions; i++) {
+            int to = text.indexOf(',', from);
+            if (to < 0 || to > end) to = end;
+            vector[i] = Float.parseFloat(text.substring(from, to).trim());
+            from = to + 1;
+        }
+        return vector;
+    }
+
+    public static String format(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12);
+        sb.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
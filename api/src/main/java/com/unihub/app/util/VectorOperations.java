@@ -0,0 +1,19 @@
+package com.unihub.app.util;
+
+public class VectorOperations {
+    // scales the vector to unit length in place so cosine distance matches the stored embeddings
+    public static float[] normalize(float[] vector) {
+        float norm = 0f;
+        for (float f : vector) {
+            norm += f * f;
+        }
+        norm = (float) Math.sqrt(norm);
+
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,92 @@
+package com.unihub.app.util;
+
+import com.pgvector.PGvector;
+import jakarta.persistence.Query;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.sql.spi.NativeQueryImplementor;
+import org.hibernate.type.CustomType;
+import org.hibernate.usertype.UserType;
+import org.postgresql.util.PGobject;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Hibernate type for pgvector {@code vector} columns and parameters, sent to the driver as a
+ * {@link BinaryVector} so the value travels as a typed bind parameter instead of SQL text, in
+ * pgvector's binary format on connections registered by {@code VectorTypeConfig}.
+ */
+public class VectorType implements UserType<float[]> {
+    /**
+     * Binds a vector to a named parameter of a native query, so the statement text stays the
+     * same for every vector and the driver can reuse its server-side prepared statement.
+     */
+    @SuppressWarnings("unchecked")
+    public static void bindVector(Query query, String name, float[] vector) {
+        NativeQueryImplementor<Object> nativeQuery = query.unwrap(NativeQueryImplementor.class);
+        CustomType<float[]> type = new CustomType<>(new VectorType(), nativeQuery.getSession().getFactory().getTypeConfiguration());
+        nativeQuery.setParameter(name, vector, type);
+    }
+
+    @Override
+    public int getSqlType() {
+        return Types.OTHER;
+    }
+
+    @Override
+    public Class<float[]> returnedClass() {
+        return float[].class;
+    }
+
+    @Override
+    public boolean equals(float[] x, float[] y) {
+        return Arrays.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(float[] x) {
+        return Arrays.hashCode(x);
+    }
+
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner) throws SQLException {
+        Object value = rs.getObject(position);
+        if (value == null) return null;
+        if (value instanceof BinaryVector vector) return vector.toArray();
+        if (value instanceof PGvector vector) return vector.toArray();
+        return VectorCodec.parse(value instanceof PGobject pgObject ? pgObject.getValue() : value.toString());
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index, SharedSessionContractImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+        } else {
+            st.setObject(index, new BinaryVector(value));
+        }
+    }
+
+    @Override
+    public float[] deepCopy(float[] value) {
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(float[] value) {
+        return deepCopy(value);
+    }
+
+    @Override
+    public float[] assemble(Serializable cached, Object owner) {
+        return deepCopy((float[]) cached);
+    }
+}
@@ -0,0 +1,83 @@
+package com.unihub.app.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unihub.app.util.EmbeddingResponseParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares streaming an embeddings response into float arrays with reading it as a JsonNode
+ * tree and copying the values out, as OpenAIService did. Run {@link #main} from the IDE, or
+ * after {@code mvn test-compile} run {@code org.openjdk.jmh.Main EmbeddingParsingBenchmark -prof gc}
+ * on the test classpath; gc.alloc.rate.norm is the bytes allocated per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingParsingBenchmark {
+    private static final int DIMENSIONS = 1536;
+
+    // one query embedding, and a full batch from the embedding batcher
+    @Param({"1", "64"})
+    private int inputs;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < inputs; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int j = 0; j < DIMENSIONS; j++) {
+                if (j > 0) json.append(',');
+                json.append((float) random.nextGaussian() / 40);
+            }
+            json.append("]}");
+        }
+        json.append("],\"model\":\"text-embedding-ada-002\",\"usage\":{\"prompt_tokens\":8,\"total_tokens\":8}}");
+        response = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public float[][] tree() throws IOException {
+        JsonNode data = objectMapper.readTree(new ByteArrayInputStream(response)).get("data");
+        float[][] embeddings = new float[inputs][];
+        for (JsonNode item : data) {
+            JsonNode embeddingNode = item.get("embedding");
+            float[] embedding = new float[embeddingNode.size()];
+            for (int i = 0; i < embeddingNode.size(); i++) {
+                embedding[i] = (float) embeddingNode.get(i).asDouble();
+            }
+            embeddings[item.get("index").asInt()] = embedding;
+        }
+        return embeddings;
+    }
+
+    @Benchmark
+    public float[][] streaming() throws IOException {
+        return EmbeddingResponseParser.parse(new ByteArrayInputStream(response), inputs, DIMENSIONS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EmbeddingParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.unihub.app.benchmark;
+
+import com.unihub.app.util.VectorCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary vector codec with the text conversion the old VectorConverter did for
+ * every loaded Event/College row. Run {@link #main} from the IDE, or after {@code mvn test-compile}
+ * run {@code org.openjdk.jmh.Main VectorCodecBenchmark -prof gc} on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorCodecBenchmark {
+    private float[] vector;
+    private String text;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        vector = new float[1536];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian() / 40;
+        }
+        text = textEncode(vector);
+        binary = VectorCodec.encode(vector);
+    }
+
+    @Benchmark
+    public String textEncode() {
+        return textEncode(vector);
+    }
+
+    @Benchmark
+    public float[] textDecode() {
+        return textDecode(text);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return VectorCodec.encode(vector);
+    }
+
+    @Benchmark
+    public float[] binaryDecode() {
+        return VectorCodec.decode(binary, 0);
+    }
+
+    // the removed VectorConverter, kept here as the baseline
+    private static String textEncode(float[] attribute) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < attribute.length; i++) {
+            sb.append(attribute[i]);
+            if (i < attribute.length - 1) sb.append(',');
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private static float[] textDecode(String dbData) {
+        String cleaned = dbData.replace("[", "").replace("]", "");
+        String[] parts = cleaned.split(",");
+        float[] array = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            array[i] = Float.parseFloat(parts[i]);
+        }
+        return array;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
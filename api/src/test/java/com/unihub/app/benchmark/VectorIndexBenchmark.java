@@ -0,0 +1,154 @@
+package com.unihub.app.benchmark;
+
+import com.unihub.app.util.BinaryVector;
+import com.unihub.app.util.VectorOperations;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Recall vs. latency of the HNSW cosine index for different hnsw.ef_search values, on a seeded
+ * table of clustered 1536-dimension vectors shaped like our event embeddings. Needs a Postgres
+ * with pgvector, point it at one with BENCHMARK_DB_URL / BENCHMARK_DB_USER / BENCHMARK_DB_PASSWORD
+ * and run {@link #main}. Exact top-k is computed in memory to score recall.
+ */
+public class VectorIndexBenchmark {
+    private static final int ROWS = 20_000;
+    private static final int DIMENSIONS = 1536;
+    private static final int CLUSTERS = 200;
+    private static final int QUERIES = 100;
+    private static final int K = 20;
+    private static final int[] EF_SEARCH = {20, 40, 80, 100, 200, 400, 800};
+
+    public static void main(String[] args) throws SQLException {
+        String url = System.getenv().getOrDefault("BENCHMARK_DB_URL", "jdbc:postgresql://localhost:5432/postgres");
+        String user = System.getenv().getOrDefault("BENCHMARK_DB_USER", "postgres");
+        String password = System.getenv().getOrDefault("BENCHMARK_DB_PASSWORD", "");
+
+        Random random = new Random(42);
+        float[][] rows = seed(random);
+        float[][] queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = jitter(rows[random.nextInt(ROWS)], random, 0.02f);
+        }
+
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+            conn.unwrap(PGConnection.class).addDataType("vector", BinaryVector.class);
+            load(conn, rows);
+
+            System.out.printf("%-10s %-8s %-10s %-10s%n", "ef_search", "recall", "p50 (ms)", "p95 (ms)");
+            run(conn, rows, queries, "exact", "SET LOCAL enable_indexscan = off");
+            for (int efSearch : EF_SEARCH) {
+                run(conn, rows, queries, String.valueOf(efSearch), "SET LOCAL hnsw.ef_search = " + efSearch);
+            }
+        } finally {
+            try (Connection conn = DriverManager.getConnection(url, user, password); Statement st = conn.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS vector_index_benchmark");
+            }
+        }
+    }
+
+    private static void run(Connection conn, float[][] rows, float[][] queries, String label, String setting) throws SQLException {
+        long[] latencies = new long[queries.length];
+        double recall = 0;
+
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement();
+             PreparedStatement knn = conn.prepareStatement("SELECT id FROM vector_index_benchmark ORDER BY embedding <=> ? LIMIT " + K)) {
+            st.execute(setting);
+            for (int i = 0; i < queries.length; i++) {
+                knn.setObject(1, new BinaryVector(queries[i]));
+
+                Set<Integer> found = new HashSet<>();
+                long start = System.nanoTime();
+                try (ResultSet rs = knn.executeQuery()) {
+                    while (rs.next()) found.add(rs.getInt(1));
+                }
+                latencies[i] = System.nanoTime() - start;
+
+                found.retainAll(exactTopK(rows, queries[i]));
+                recall += (double) found.size() / K;
+            }
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %-8.3f %-10.2f %-10.2f%n", label, recall / queries.length,
+                latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.95)] / 1e6);
+    }
+
+    private static void load(Connection conn, float[][] rows) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE EXTENSION IF NOT EXISTS vector");
+            st.execute("DROP TABLE IF EXISTS vector_index_benchmark");
+            st.execute("CREATE UNLOGGED TABLE vector_index_benchmark (id INT PRIMARY KEY, embedding vector(" + DIMENSIONS + "))");
+        }
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement("INSERT INTO vector_index_benchmark (id, embedding) VALUES (?, ?)")) {
+            for (int id = 0; id < rows.length; id++) {
+                insert.setInt(1, id);
+                insert.setObject(2, new BinaryVector(rows[id]));
+                insert.addBatch();
+                if (id % 1000 == 999) insert.executeBatch();
+            }
+            insert.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        long start = System.nanoTime();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE INDEX ON vector_index_benchmark USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 64)");
+            st.execute("ANALYZE vector_index_benchmark");
+        }
+        System.out.printf("Seeded %d rows, built HNSW index in %d ms%n", rows.length, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Set<Integer> exactTopK(float[][] rows, float[] query) {
+        Integer[] ids = new Integer[rows.length];
+        double[] distances = new double[rows.length];
+        for (int id = 0; id < rows.length; id++) {
+            ids[id] = id;
+            double dot = 0;
+            for (int d = 0; d < DIMENSIONS; d++) dot += rows[id][d] * query[d];
+            distances[id] = 1 - dot;
+        }
+        Arrays.sort(ids, (a, b) -> Double.compare(distances[a], distances[b]));
+        return new HashSet<>(Arrays.asList(ids).subList(0, K));
+    }
+
+    // clustered unit vectors, real embeddings are far from uniformly spread over the sphere
+    private static float[][] seed(Random random) {
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = jitter(new float[DIMENSIONS], random, 1f);
+        }
+
+        float[][] rows = new float[ROWS][];
+        for (int id = 0; id < ROWS; id++) {
+            rows[id] = jitter(centroids[random.nextInt(CLUSTERS)], random, 0.05f);
+        }
+        return rows;
+    }
+
+    private static float[] jitter(float[] base, Random random, float scale) {
+        float[] vector = new float[base.length];
+        for (int d = 0; d < base.length; d++) {
+            vector[d] = base[d] + (float) random.nextGaussian() * scale / (float) Math.sqrt(DIMENSIONS);
+        }
+        return VectorOperations.normalize(vector);
+    }
+}
@@ -0,0 +1,205 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventCapacityProperties;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Flushes and recounts against a JDBC connection that records each UPDATE with its parameters,
+ * and a transaction manager that commits or rolls back on the test's word.
+ */
+class AttendeeCountBufferTest {
+    private final ScriptedDatabase db = new ScriptedDatabase();
+    private final EventCapacityProperties properties = new EventCapacityProperties();
+    private final AttendeeCountBuffer buffer = buffer();
+
+    @Test
+    void flushWritesEveryEventInChunksOfAThousand() {
+        for (int eventId = 2500; eventId >= 1; eventId--) buffer.add(eventId, 2);
+        buffer.add(17, -1);
+
+        buffer.flush();
+
+        assertEquals(List.of(1000, 1000, 500), db.updates.stream().map(Map::size).toList());
+        // in id order, the same lock order for every flush
+        assertEquals(List.of(1, 1000), List.of(db.updates.get(0).firstKey(), db.updates.get(0).lastKey()));
+        assertEquals(1, db.updates.get(0).get(17));
+        assertEquals(2, db.updates.get(2).get(2500));
+        assertEquals(1, db.commits);
+        assertEquals(0, buffer.pending(17));
+        assertTrue(pending().isEmpty());
+    }
+
+    @Test
+    void changesThatCancelOutAreNotWritten() {
+        buffer.add(7, 3);
+        buffer.add(7, -3);
+
+        assertTrue(pending().isEmpty());
+        buffer.flush();
+        assertTrue(db.updates.isEmpty());
+    }
+
+    @Test
+    void failedFlushKeepsItsChangesForTheNext() {
+        buffer.add(7, 3);
+        db.failNextUpdate = true;
+
+        buffer.flush();
+        assertEquals(1, db.rollbacks);
+        assertEquals(3, buffer.pending(7));
+
+        buffer.flush();
+        assertEquals(3, db.updates.get(0).get(7));
+        assertEquals(0, buffer.pending(7));
+    }
+
+    @Test
+    void changesAddedDuringAFlushWaitForTheNext() {
+        buffer.add(7, 3);
+        db.duringUpdate = () -> buffer.add(7, 2);
+
+        buffer.flush();
+        assertEquals(3, db.updates.get(0).get(7));
+        assertEquals(2, buffer.pending(7));
+
+        db.duringUpdate = () -> {};
+        buffer.flush();
+        assertEquals(2, db.updates.get(1).get(7));
+        assertTrue(pending().isEmpty());
+    }
+
+    @Test
+    void startupRecountsOnlyWithWriteBehind() {
+        db.corrected = 4;
+        buffer.afterSingletonsInstantiated();
+        assertTrue(db.recounts.isEmpty());
+
+        properties.getWriteBehind().setEnabled(true);
+        buffer.afterSingletonsInstantiated();
+        assertEquals(1, db.recounts.size());
+        assertTrue(db.recounts.get(0).contains("r.status = 'APPROVED'"));
+        assertEquals(1, db.commits);
+        assertEquals(4, buffer.recount());
+    }
+
+    private AttendeeCountBuffer buffer() {
+        AttendeeCountBuffer buffer = new AttendeeCountBuffer(db.transactionManager());
+        ReflectionTestUtils.setField(buffer, "em", db.entityManager());
+        ReflectionTestUtils.setField(buffer, "properties", properties);
+        return buffer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Integer> pending() {
+        return (Map<Integer, Integer>) ReflectionTestUtils.getField(buffer, "pending");
+    }
+
+    private static class ScriptedDatabase {
+        // event id to seats added, per UPDATE ... FROM (VALUES ...) sent
+        final List<TreeMap<Integer, Integer>> updates = new ArrayList<>();
+        final List<String> recounts = new ArrayList<>();
+        boolean failNextUpdate;
+        Runnable duringUpdate = () -> {};
+        int corrected;
+        int commits;
+        int rollbacks;
+
+        PlatformTransactionManager transactionManager() {
+            return proxy(PlatformTransactionManager.class, (method, args) -> switch (method) {
+                case "getTransaction" -> new SimpleTransactionStatus();
+                case "commit" -> {
+                    commits++;
+                    yield null;
+                }
+                case "rollback" -> {
+                    rollbacks++;
+                    yield null;
+                }
+                default -> null;
+            });
+        }
+
+        EntityManager entityManager() {
+            return proxy(EntityManager.class, (method, args) -> switch (method) {
+                case "createNativeQuery" -> recount((String) args[0]);
+                case "unwrap" -> proxy(Session.class, (sessionMethod, sessionArgs) -> {
+                    if (!sessionMethod.equals("doWork")) return null;
+                    try {
+                        ((Work) sessionArgs[0]).execute(connection());
+                    } catch (SQLException e) {
+                        // as Hibernate does, an unchecked JDBCException
+                        throw new IllegalStateException(e);
+                    }
+                    return null;
+                });
+                default -> null;
+            });
+        }
+
+        private Query recount(String sql) {
+            return proxy(Query.class, (method, args) -> {
+                if (!method.equals("executeUpdate")) return null;
+                recounts.add(sql);
+                return corrected;
+            });
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (method, args) -> method.equals("prepareStatement") ? update() : null);
+        }
+
+        private PreparedStatement update() {
+            List<Integer> parameters = new ArrayList<>();
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "setInt" -> {
+                    parameters.add((int) args[1]);
+                    yield null;
+                }
+                case "executeUpdate" -> {
+                    if (failNextUpdate) {
+                        failNextUpdate = false;
+                        throw new SQLException("connection reset");
+                    }
+                    duringUpdate.run();
+                    TreeMap<Integer, Integer> seats = new TreeMap<>();
+                    for (int i = 0; i < parameters.size(); i += 2) seats.put(parameters.get(i), parameters.get(i + 1));
+                    updates.add(seats);
+                    yield seats.size();
+                }
+                default -> null;
+            });
+        }
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(method.getName(), args);
+            if (result == null && method.getReturnType() == boolean.class) return false;
+            if (result == null && method.getReturnType() == int.class) return 0;
+            return result;
+        });
+    }
+}
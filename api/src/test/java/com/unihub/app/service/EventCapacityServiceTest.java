@@ -0,0 +1,390 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventCapacityProperties;
+import com.unihub.app.util.CapacityCounter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EventCapacityService against a scripted event row that behaves like Postgres under read
+ * committed: the conditional UPDATE locks the row until its transaction ends, and a SELECT only
+ * sees committed seats. Two services share the row, as two instances share the database.
+ */
+class EventCapacityServiceTest {
+    private static final int EVENT_ID = 7;
+
+    @Test
+    void twoInstancesInAFlashCrowdNeverOversell() throws Exception {
+        int capacity = 500;
+        ScriptedEvent event = new ScriptedEvent(capacity);
+        List<EventCapacityService> instances = List.of(service(event, Duration.ofMillis(1)), service(event, Duration.ofMillis(1)));
+        AtomicInteger booked = new AtomicInteger();
+
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService crowd = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10_000; i++) {
+                crowd.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    EventCapacityService instance = instances.get(random.nextInt(instances.size()));
+                    int tickets = random.nextInt(1, 5);
+                    // one in ten transactions rolls back after booking
+                    boolean commit = random.nextInt(10) != 0;
+                    awaitUninterruptibly(start);
+
+                    boolean seated = inTransaction(event, commit, () ->
+                            instance.tryReserve(EVENT_ID, tickets) && instance.tryBook(EVENT_ID, tickets));
+                    if (!seated || !commit) return;
+                    booked.addAndGet(tickets);
+
+                    // and one in twenty attendees unregisters again
+                    if (random.nextInt(20) == 0) {
+                        inTransaction(event, true, () -> {
+                            instance.release(EVENT_ID, tickets);
+                            return null;
+                        });
+                        booked.addAndGet(-tickets);
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertTrue(event.maxAttendees <= capacity, "booked " + event.maxAttendees + " of " + capacity);
+        assertEquals(booked.get(), event.committedAttendees);
+        for (EventCapacityService instance : instances) {
+            CapacityCounter counter = counter(instance);
+            if (counter != null) assertEquals(0, counter.held());
+        }
+    }
+
+    @Test
+    void staleCounterIsCaughtByTheConditionalUpdateAndReloaded() {
+        ScriptedEvent event = new ScriptedEvent(10);
+        EventCapacityService here = service(event, Duration.ofHours(1));
+        EventCapacityService elsewhere = service(event, Duration.ofHours(1));
+
+        // loads the counter with all 10 seats free
+        here.checkRoom(EVENT_ID, 1);
+        assertTrue(inTransaction(event, true, () -> elsewhere.tryReserve(EVENT_ID, 10) && elsewhere.tryBook(EVENT_ID, 10)));
+
+        // this counter still thinks the seats are free, the database turns the booking away
+        assertFalse(inTransaction(event, true, () -> here.tryReserve(EVENT_ID, 4) && here.tryBook(EVENT_ID, 4)));
+        assertEquals(10, event.committedAttendees);
+        assertTrue(counter(here).isExpired());
+
+        // the next RSVP reads the count again and is turned away up front
+        int reads = event.reads.get();
+        assertFalse(inTransaction(event, true, () -> here.tryReserve(EVENT_ID, 1)));
+        assertEquals(reads + 1, event.reads.get());
+    }
+
+    @Test
+    void fullCounterRereadsTheDatabaseOnlyOnceItIsStale() {
+        ScriptedEvent event = new ScriptedEvent(4);
+        EventCapacityService here = service(event, Duration.ofHours(1));
+        EventCapacityService elsewhere = service(event, Duration.ofHours(1));
+
+        assertTrue(inTransaction(event, true, () -> here.tryReserve(EVENT_ID, 4) && here.tryBook(EVENT_ID, 4)));
+        assertTrue(inTransaction(event, true, () -> {
+            elsewhere.release(EVENT_ID, 2);
+            return true;
+        }));
+
+        // full and fresh: turned away without a query, even though seats were freed elsewhere
+        int reads = event.reads.get();
+        assertFalse(inTransaction(event, true, () -> here.tryReserve(EVENT_ID, 2)));
+        assertEquals(reads, event.reads.get());
+
+        ReflectionTestUtils.setField(properties(here), "resyncInterval", Duration.ZERO);
+        assertTrue(inTransaction(event, true, () -> here.tryReserve(EVENT_ID, 2) && here.tryBook(EVENT_ID, 2)));
+        assertEquals(reads + 1, event.reads.get());
+        assertEquals(4, event.committedAttendees);
+    }
+
+    @Test
+    void capacityChangeKeepsSeatsHeldByTransactionsInFlight() throws Exception {
+        ScriptedEvent event = new ScriptedEvent(4);
+        EventCapacityService service = service(event, Duration.ofHours(1));
+        // write-behind: no conditional UPDATE, the counter is the only check
+        properties(service).getWriteBehind().setEnabled(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(service.tryReserve(EVENT_ID, 3) && service.tryBook(EVENT_ID, 3));
+
+            // the organizer edits the event while the booking is in flight
+            Thread organizer = Thread.ofVirtual().start(() -> inTransaction(event, true, () -> {
+                service.invalidate(EVENT_ID);
+                return null;
+            }));
+            organizer.join();
+            assertTrue(counter(service).isExpired());
+
+            // the resync still leaves the held seats out
+            assertFalse(service.tryReserve(EVENT_ID, 2));
+            assertEquals(1, counter(service).remaining());
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertFalse(inTransaction(event, true, () -> service.tryReserve(EVENT_ID, 2)));
+        assertTrue(inTransaction(event, true, () -> service.tryReserve(EVENT_ID, 1) && service.tryBook(EVENT_ID, 1)));
+    }
+
+    @Test
+    void rolledBackReservationGivesItsSeatsBack() {
+        ScriptedEvent event = new ScriptedEvent(3);
+        EventCapacityService service = service(event, Duration.ofHours(1));
+
+        assertFalse(inTransaction(event, false, () -> service.tryReserve(EVENT_ID, 3) && service.tryBook(EVENT_ID, 3)));
+        assertEquals(0, event.committedAttendees);
+        assertEquals(3, counter(service).remaining());
+        assertEquals(0, counter(service).held());
+        assertTrue(inTransaction(event, true, () -> service.tryReserve(EVENT_ID, 3) && service.tryBook(EVENT_ID, 3)));
+    }
+
+    @Test
+    void newRsvpsQueueBehindTheWaitlistUntilItIsDrained() {
+        ScriptedEvent event = new ScriptedEvent(2);
+        EventCapacityService service = service(event, Duration.ofHours(1));
+
+        assertTrue(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 2) && service.tryBook(EVENT_ID, 2)));
+        assertFalse(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 1)));
+        inTransaction(event, true, () -> {
+            service.joinedWaitlist(EVENT_ID);
+            return null;
+        });
+
+        // the promoter reads the line, someone joins it after that
+        int seen = service.waitlisted(EVENT_ID);
+        inTransaction(event, true, () -> {
+            service.release(EVENT_ID, 1);
+            return null;
+        });
+        inTransaction(event, true, () -> {
+            service.joinedWaitlist(EVENT_ID);
+            return null;
+        });
+
+        // the freed seat is left to the head of the line
+        assertFalse(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 1)));
+        assertTrue(inTransaction(event, true, () -> service.tryReserve(EVENT_ID, 1) && service.tryBook(EVENT_ID, 1)));
+
+        // the line the promoter read is drained, the one who joined since is still waiting
+        service.drainedWaitlist(EVENT_ID, seen);
+        inTransaction(event, true, () -> {
+            service.release(EVENT_ID, 2);
+            return null;
+        });
+        assertFalse(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 1)));
+
+        service.drainedWaitlist(EVENT_ID, service.waitlisted(EVENT_ID));
+        assertTrue(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 1) && service.tryBook(EVENT_ID, 1)));
+    }
+
+    @Test
+    void waitlistInTheDatabaseKeepsNewRsvpsOut() {
+        ScriptedEvent event = new ScriptedEvent(5);
+        event.waitlist = true;
+        EventCapacityService service = service(event, Duration.ofHours(1));
+
+        assertFalse(inTransaction(event, true, () -> service.tryAdmit(EVENT_ID, 1)));
+        assertTrue(inTransaction(event, true, () -> service.tryReserve(EVENT_ID, 1) && service.tryBook(EVENT_ID, 1)));
+    }
+
+    private static EventCapacityService service(ScriptedEvent event, Duration resyncInterval) {
+        EventCapacityProperties properties = new EventCapacityProperties();
+        properties.setResyncInterval(resyncInterval);
+        AttendeeCountBuffer buffer = new AttendeeCountBuffer(null);
+        ReflectionTestUtils.setField(buffer, "properties", properties);
+
+        EventCapacityService service = new EventCapacityService();
+        ReflectionTestUtils.setField(service, "em", event.entityManager());
+        ReflectionTestUtils.setField(service, "attendeeCountBuffer", buffer);
+        ReflectionTestUtils.setField(service, "properties", properties);
+        return service;
+    }
+
+    private static EventCapacityProperties properties(EventCapacityService service) {
+        return (EventCapacityProperties) ReflectionTestUtils.getField(service, "properties");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CapacityCounter counter(EventCapacityService service) {
+        return ((Map<Integer, CapacityCounter>) ReflectionTestUtils.getField(service, "counters")).get(EVENT_ID);
+    }
+
+    // what Spring's transaction manager does around the work: commit or roll back, then the
+    // synchronizations; a rolled back transaction returns false
+    @SuppressWarnings("unchecked")
+    private static <T> T inTransaction(ScriptedEvent event, boolean commit, Callable<T> work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                commit = false;
+                result = null;
+            }
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            event.finish(commit);
+            if (commit) synchronizations.forEach(TransactionSynchronization::afterCommit);
+            int status = commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK;
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+            return commit ? result : (T) Boolean.FALSE;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /** One events.event row, with the SQL EventCapacityService sends scripted against it. */
+    private static class ScriptedEvent {
+        final int capacity;
+        final ReentrantLock rowLock = new ReentrantLock();
+        final AtomicInteger reads = new AtomicInteger();
+        // guarded by rowLock, includes the lock holder's uncommitted seats
+        int attendees;
+        int maxAttendees;
+        volatile int committedAttendees;
+        volatile boolean waitlist;
+        private final ThreadLocal<int[]> uncommitted = ThreadLocal.withInitial(() -> new int[1]);
+
+        ScriptedEvent(int capacity) {
+            this.capacity = capacity;
+        }
+
+        // UPDATE ... WHERE num_attendees + ? <= capacity, waiting on the row lock like Postgres does
+        boolean book(int tickets) {
+            rowLock.lock();
+            if (attendees + tickets > capacity) {
+                // no row matched, so this statement keeps no lock
+                rowLock.unlock();
+                return false;
+            }
+            attendees += tickets;
+            maxAttendees = Math.max(maxAttendees, attendees);
+            uncommitted.get()[0] += tickets;
+            return true;
+        }
+
+        void release(int tickets) {
+            rowLock.lock();
+            attendees -= tickets;
+            uncommitted.get()[0] -= tickets;
+        }
+
+        // read committed: the lock holder's seats aren't visible yet
+        int freeSeats() {
+            reads.incrementAndGet();
+            return capacity - committedAttendees;
+        }
+
+        void finish(boolean commit) {
+            if (!rowLock.isHeldByCurrentThread()) return;
+            if (!commit) attendees -= uncommitted.get()[0];
+            committedAttendees = attendees;
+            uncommitted.get()[0] = 0;
+            while (rowLock.isHeldByCurrentThread()) rowLock.unlock();
+        }
+
+        EntityManager entityManager() {
+            return proxy(EntityManager.class, (self, method, args) -> switch (method) {
+                case "createNativeQuery" -> query((String) args[0]);
+                case "unwrap" -> proxy(org.hibernate.Session.class, (session, sessionMethod, sessionArgs) ->
+                        sessionMethod.equals("doReturningWork") ? ((ReturningWork<?>) sessionArgs[0]).execute(connection()) : null);
+                default -> null;
+            });
+        }
+
+        private Query query(String sql) {
+            Map<String, Object> parameters = new HashMap<>();
+            return proxy(Query.class, (self, method, args) -> switch (method) {
+                case "setParameter" -> {
+                    parameters.put((String) args[0], args[1]);
+                    yield self;
+                }
+                case "getResultList" -> Collections.singletonList(new Object[]{freeSeats(), waitlist});
+                case "executeUpdate" -> {
+                    release((Integer) parameters.get("tickets"));
+                    yield 1;
+                }
+                default -> null;
+            });
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (self, method, args) -> method.equals("prepareStatement") ? bookStatement() : null);
+        }
+
+        private PreparedStatement bookStatement() {
+            int[] tickets = new int[1];
+            return proxy(PreparedStatement.class, (self, method, args) -> switch (method) {
+                case "setInt" -> {
+                    if ((int) args[0] == 1) tickets[0] = (int) args[1];
+                    yield null;
+                }
+                case "executeQuery" -> {
+                    boolean[] row = {book(tickets[0])};
+                    yield proxy(ResultSet.class, (rs, rsMethod, rsArgs) -> {
+                        if (!rsMethod.equals("next")) return null;
+                        boolean next = row[0];
+                        row[0] = false;
+                        return next;
+                    });
+                }
+                default -> null;
+            });
+        }
+    }
+
+    private interface Handler {
+        Object handle(Object self, String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(proxy, method.getName(), args);
+            if (result == null && method.getReturnType() == boolean.class) return false;
+            if (result == null && method.getReturnType() == int.class) return 0;
+            return result;
+        });
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
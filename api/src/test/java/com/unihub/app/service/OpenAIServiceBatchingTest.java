@@ -0,0 +1,154 @@
+package com.unihub.app.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sun.net.httpserver.HttpServer;
+import com.unihub.app.EmbeddingBatchProperties;
+import com.unihub.app.EmbeddingStoreProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs OpenAIService against a local stub of the embeddings endpoint that takes 20 ms per call,
+ * once sending each text on its own and once batched, and counts the calls it receives.
+ */
+class OpenAIServiceBatchingTest {
+    private static final int DIMENSIONS = 8;
+    private static final long UPSTREAM_LATENCY_MS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inputs = new AtomicInteger();
+    private HttpServer server;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/embeddings", exchange -> {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            requests.incrementAndGet();
+
+            ObjectNode response = objectMapper.createObjectNode();
+            ArrayNode data = response.putArray("data");
+            JsonNode input = request.get("input");
+            for (int i = 0; i < input.size(); i++) {
+                inputs.incrementAndGet();
+                ObjectNode item = data.addObject();
+                item.put("index", i);
+                ArrayNode embedding = item.putArray("embedding");
+                for (float value : expected(input.get(i).asText())) embedding.add(value);
+            }
+
+            try {
+                Thread.sleep(UPSTREAM_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void batchingSendsFewerCalls() throws Exception {
+        int texts = 512;
+        int callers = 64;
+
+        OpenAIService oneCallPerText = service(false);
+        embedConcurrently(oneCallPerText, "single", texts, callers);
+        int unbatchedRequests = requests.getAndSet(0);
+        oneCallPerText.close();
+
+        OpenAIService batched = service(true);
+        embedConcurrently(batched, "batched", texts, callers);
+        int batchedRequests = requests.getAndSet(0);
+        batched.close();
+
+        assertEquals(texts, unbatchedRequests);
+        assertTrue(batchedRequests <= texts / 8, "batched calls: " + batchedRequests);
+    }
+
+    @Test
+    void concurrentIdenticalTextsShareOneCall() throws Exception {
+        OpenAIService service = service(true);
+        int callers = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<float[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return service.generateEmbedding("georgia tech hackathon");
+                }));
+            }
+            start.countDown();
+
+            float[] first = results.get(0).get();
+            for (Future<float[]> result : results) {
+                assertArrayEquals(expected("georgia tech hackathon"), result.get());
+                if (result != results.get(0)) assertNotSame(first, result.get());
+            }
+        }
+        service.close();
+
+        assertEquals(1, inputs.get());
+    }
+
+    private void embedConcurrently(OpenAIService service, String prefix, int texts, int callers) throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(callers)) {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < texts; i++) {
+                String text = prefix + " event " + i;
+                results.add(executor.submit(() -> assertArrayEquals(expected(text), service.generateEmbedding(text))));
+            }
+            for (Future<?> result : results) result.get();
+        }
+    }
+
+    private OpenAIService service(boolean batching) {
+        EmbeddingBatchProperties batchProperties = new EmbeddingBatchProperties();
+        batchProperties.setEnabled(batching);
+        OpenAIEmbeddingProvider provider = new OpenAIEmbeddingProvider(new RestTemplate());
+        ReflectionTestUtils.setField(provider, "apiKey", "test");
+        ReflectionTestUtils.setField(provider, "model", "text-embedding-ada-002");
+        ReflectionTestUtils.setField(provider, "dimensions", DIMENSIONS);
+        ReflectionTestUtils.setField(provider, "baseUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        return new OpenAIService(new RestTemplate(), Caffeine.newBuilder().build(),
+                new EmbeddingStore(new EmbeddingStoreProperties()), batchProperties, provider);
+    }
+
+    // each text gets its own vector, so a result handed to the wrong caller fails the comparison
+    private static float[] expected(String text) {
+        float[] vector = new float[DIMENSIONS];
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) vector[i % DIMENSIONS] += bytes[i] * (i + 1);
+        return vector;
+    }
+}
@@ -0,0 +1,165 @@
+package com.unihub.app.service;
+
+import com.unihub.app.EventCapacityProperties;
+import com.unihub.app.dto.request.AnswerRequest;
+import com.unihub.app.exception.MissingRequiredAnswersException;
+import com.unihub.app.exception.UserAlreadyRegisteredException;
+import com.unihub.app.model.RegistrationStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the statements an RSVP sends, against a JDBC connection that answers from a script.
+ * executeQuery, executeUpdate and executeBatch each make one round trip.
+ */
+class RsvpWriterTest {
+    private static final int EVENT_ID = 7;
+
+    private final RsvpWriter writer = new RsvpWriter(capacityService());
+
+    @Test
+    void approvedRsvpWithAnswersTakesFourStatements() throws Exception {
+        ScriptedConnection jdbc = new ScriptedConnection();
+        jdbc.contextRows = List.<Object[]>of(
+                context(11, "TYPED", true),
+                context(12, "CHOICE", true),
+                context(13, "MULTISELECT", false));
+
+        RsvpWriter.Result result = writer.write(jdbc.connection(), EVENT_ID, "ada@gatech.edu", null, 2,
+                RegistrationStatus.APPROVED, false, List.of(
+                        new AnswerRequest(11, "Computer Science", null),
+                        new AnswerRequest(12, "Yes", null),
+                        new AnswerRequest(13, null, List.of("Python", "Java"))));
+
+        assertEquals(List.of("SELECT", "INSERT INTO events.registration", "INSERT INTO events.answer", "UPDATE events.event"), jdbc.roundTrips);
+        assertEquals(3, jdbc.batchedRows);
+        assertEquals(101, result.registrationId());
+        assertEquals("HackGT", result.eventName());
+        assertFalse(result.waitlisted());
+    }
+
+    @Test
+    void repeatRsvpIsTurnedAwayByTheUniqueConstraint() {
+        ScriptedConnection jdbc = new ScriptedConnection();
+        jdbc.contextRows = List.<Object[]>of(context(null, null, false));
+        jdbc.registrationRows = List.of();
+
+        assertThrows(UserAlreadyRegisteredException.class, () -> writer.write(jdbc.connection(), EVENT_ID,
+                "ada@gatech.edu", "Ada", 1, RegistrationStatus.APPROVED, false, null));
+        assertEquals(List.of("SELECT", "INSERT INTO events.registration"), jdbc.roundTrips);
+    }
+
+    @Test
+    void waitlistedRsvpDoesNotBook() throws Exception {
+        ScriptedConnection jdbc = new ScriptedConnection();
+        jdbc.contextRows = List.<Object[]>of(context(null, null, false));
+
+        RsvpWriter.Result result = writer.write(jdbc.connection(), EVENT_ID, "ada@gatech.edu", "Ada", 1,
+                RegistrationStatus.APPROVED, true, List.of());
+
+        assertEquals(List.of("SELECT", "INSERT INTO events.registration"), jdbc.roundTrips);
+        assertTrue(result.waitlisted());
+    }
+
+    @Test
+    void missingRequiredAnswerWritesNothing() {
+        ScriptedConnection jdbc = new ScriptedConnection();
+        jdbc.contextRows = List.<Object[]>of(context(11, "TYPED", true));
+
+        assertThrows(MissingRequiredAnswersException.class, () -> writer.write(jdbc.connection(), EVENT_ID,
+                "ada@gatech.edu", "Ada", 1, RegistrationStatus.APPROVED, false, List.of()));
+        assertEquals(List.of("SELECT"), jdbc.roundTrips);
+    }
+
+    // books through the conditional UPDATE, write-behind is off by default
+    private static EventCapacityService capacityService() {
+        AttendeeCountBuffer buffer = new AttendeeCountBuffer(null);
+        ReflectionTestUtils.setField(buffer, "properties", new EventCapacityProperties());
+        EventCapacityService service = new EventCapacityService();
+        ReflectionTestUtils.setField(service, "attendeeCountBuffer", buffer);
+        return service;
+    }
+
+    // event, attendee and one of the event's questions, as the context query returns them
+    private static Object[] context(Integer questionId, String questionType, boolean required) {
+        return new Object[]{EVENT_ID, "HackGT", 4, 3, "Ada", "Lovelace", questionId, questionType, required};
+    }
+
+    private static class ScriptedConnection {
+        List<Object[]> contextRows = List.of();
+        List<Object[]> registrationRows = List.<Object[]>of(new Object[]{101});
+        List<Object[]> bookingRows = List.<Object[]>of(new Object[]{EVENT_ID});
+
+        final List<String> roundTrips = new ArrayList<>();
+        int batchedRows;
+
+        Connection connection() {
+            return proxy(Connection.class, (method, args) -> switch (method) {
+                case "prepareStatement" -> statement((String) args[0]);
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            String kind = sql.strip().startsWith("SELECT") ? "SELECT" : sql.strip().lines().findFirst().orElseThrow()
+                    .replaceAll(" \\(.*", "").replaceAll("^(UPDATE \\S+).*", "$1");
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "executeQuery" -> {
+                    roundTrips.add(kind);
+                    yield resultSet(kind.equals("SELECT") ? contextRows
+                            : kind.startsWith("INSERT INTO events.registration") ? registrationRows : bookingRows);
+                }
+                case "executeUpdate" -> {
+                    roundTrips.add(kind);
+                    yield 1;
+                }
+                case "executeBatch" -> {
+                    roundTrips.add(kind);
+                    yield new int[batchedRows];
+                }
+                case "addBatch" -> {
+                    batchedRows++;
+                    yield null;
+                }
+                default -> null;
+            });
+        }
+
+        private static ResultSet resultSet(List<Object[]> rows) {
+            int[] row = {-1};
+            return proxy(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> ++row[0] < rows.size();
+                case "getObject", "getString" -> rows.get(row[0])[(int) args[0] - 1];
+                case "getInt" -> {
+                    Object value = rows.get(row[0])[(int) args[0] - 1];
+                    yield value != null ? value : 0;
+                }
+                case "getBoolean" -> rows.get(row[0])[(int) args[0] - 1];
+                default -> null;
+            });
+        }
+
+        private interface Handler {
+            Object handle(String method, Object[] args);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                Object result = handler.handle(method.getName(), args);
+                if (result == null && method.getReturnType() == boolean.class) return false;
+                if (result == null && method.getReturnType() == int.class) return 0;
+                return result;
+            });
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.unihub.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A flash crowd of RSVPs against one event: thousands of threads released at once, each taking
+ * a few seats, some of them rolling back or unregistering again.
+ */
+class CapacityCounterTest {
+    private static final int CAPACITY = 1_000;
+    private static final int ATTENDEES = 20_000;
+
+    @Test
+    void flashCrowdNeverTakesMoreSeatsThanThereAre() throws Exception {
+        CapacityCounter counter = new CapacityCounter(CAPACITY);
+        Crowd crowd = crowd(counter, false);
+
+        assertTrue(crowd.maxBooked() <= CAPACITY, "booked " + crowd.maxBooked() + " of " + CAPACITY);
+        assertEquals(0, counter.held());
+        assertEquals(CAPACITY, crowd.booked() + counter.remaining());
+        // the first RSVP turned away saw at most 3 seats left, all that came free after it was given back
+        assertTrue(counter.remaining() <= 3 + crowd.givenBack(),
+                "left " + counter.remaining() + " seats, " + crowd.givenBack() + " given back");
+    }
+
+    @Test
+    void flashCrowdNeverOversellsWhileTheCounterIsResynced() throws Exception {
+        CapacityCounter counter = new CapacityCounter(CAPACITY);
+        Crowd crowd = crowd(counter, true);
+
+        assertTrue(crowd.resyncs() > 0);
+        assertTrue(crowd.maxBooked() <= CAPACITY, "booked " + crowd.maxBooked() + " of " + CAPACITY);
+        assertEquals(0, counter.held());
+        // resyncs only ever err low, seats committed but not yet confirmed are left out twice
+        assertTrue(crowd.booked() + counter.remaining() <= CAPACITY);
+        counter.resync(CAPACITY - crowd.booked(), counter.syncMark());
+        assertEquals(CAPACITY, crowd.booked() + counter.remaining());
+    }
+
+    private record Crowd(int booked, int maxBooked, int givenBack, int resyncs) {}
+
+    // with resyncing, another thread resyncs the counter from booked for as long as the crowd lasts
+    private static Crowd crowd(CapacityCounter counter, boolean resyncing) throws InterruptedException {
+        // stands in for num_attendees, with no conditional update behind it as with write-behind
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger maxBooked = new AtomicInteger();
+        // seats handed back by rollbacks and unregistrations
+        AtomicInteger givenBack = new AtomicInteger();
+        AtomicInteger resyncs = new AtomicInteger();
+        AtomicBoolean crowdGone = new AtomicBoolean();
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread resyncer = Thread.ofPlatform().start(() -> {
+            awaitUninterruptibly(start);
+            while (resyncing && !crowdGone.get()) {
+                long mark = counter.syncMark();
+                counter.resync(CAPACITY - booked.get(), mark);
+                resyncs.incrementAndGet();
+            }
+        });
+        try (ExecutorService attendees = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < ATTENDEES; i++) {
+                attendees.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int tickets = random.nextInt(1, 5);
+                    awaitUninterruptibly(start);
+
+                    if (!counter.tryReserve(tickets)) return;
+
+                    // one in ten transactions fails after reserving
+                    if (random.nextInt(10) == 0) {
+                        givenBack.addAndGet(tickets);
+                        counter.cancel(tickets);
+                        return;
+                    }
+                    // the transaction commits, then its synchronization confirms the seats; the
+                    // pauses stand in for the time between the two, when a resync can read the count
+                    int now = booked.addAndGet(tickets);
+                    maxBooked.accumulateAndGet(now, Math::max);
+                    LockSupport.parkNanos(50_000);
+                    counter.confirm(tickets);
+
+                    // and one in twenty attendees unregisters again
+                    if (random.nextInt(20) == 0) {
+                        counter.releasing(tickets);
+                        givenBack.addAndGet(tickets);
+                        booked.addAndGet(-tickets);
+                        LockSupport.parkNanos(50_000);
+                        counter.free(tickets);
+                    }
+                });
+            }
+            start.countDown();
+        }
+        crowdGone.set(true);
+        resyncer.join();
+        return new Crowd(booked.get(), maxBooked.get(), givenBack.get(), resyncs.get());
+    }
+
+    @Test
+    void resyncLeavesHeldSeatsOut() {
+        CapacityCounter counter = new CapacityCounter(10);
+        assertTrue(counter.tryReserve(4));
+
+        // another instance booked 3 seats, the database has 7 left and doesn't know of the 4 held here
+        counter.resync(7, counter.syncMark());
+        assertEquals(3, counter.remaining());
+        assertFalse(counter.tryReserve(4));
+
+        counter.confirm(4);
+        counter.resync(3, counter.syncMark());
+        assertEquals(3, counter.remaining());
+        assertTrue(counter.tryReserve(3));
+        assertFalse(counter.tryReserve(1));
+    }
+
+    @Test
+    void resyncLeavesSeatsConfirmedWhileItReadOut() {
+        CapacityCounter counter = new CapacityCounter(10);
+        assertTrue(counter.tryReserve(4));
+
+        // the count is read before the booking commits, the confirm lands before the resync
+        long mark = counter.syncMark();
+        int free = 10;
+        counter.confirm(4);
+        counter.resync(free, mark);
+        assertEquals(6, counter.remaining());
+    }
+
+    @Test
+    void resyncLeavesSeatsOfUnregistrationsInFlightOut() {
+        CapacityCounter counter = new CapacityCounter(0);
+
+        // the unregistration commits before the count is read, its seats are freed after the resync
+        counter.releasing(2);
+        counter.resync(2, counter.syncMark());
+        assertEquals(0, counter.remaining());
+        counter.free(2);
+        assertEquals(2, counter.remaining());
+
+        counter.releasing(1);
+        counter.keep(1);
+        counter.resync(2, counter.syncMark());
+        assertEquals(2, counter.remaining());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.unihub.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records read from strings: quoting, line endings inside and between records, and what an
+ * empty field reads as.
+ */
+class CsvReaderTest {
+
+    @Test
+    void plainRecordsEndAtEitherLineEnding() throws IOException {
+        assertEquals(List.of(
+                List.of("id", "name"),
+                List.of("1", "Rice University"),
+                List.of("2", "Tufts University")), records("id,name\r\n1,Rice University\n2,Tufts University"));
+    }
+
+    @Test
+    void trailingLineEndingAddsNoRecord() throws IOException {
+        assertEquals(List.of(List.of("a", "b")), records("a,b\r\n"));
+        assertEquals(List.of(List.of("a", "b")), records("a,b\n"));
+        assertEquals(List.of(), records(""));
+    }
+
+    @Test
+    void doubledQuotesReadAsOne() throws IOException {
+        assertEquals(List.of(List.of("Say \"hi\"", "\"", "x")), records("\"Say \"\"hi\"\"\",\"\"\"\",x"));
+    }
+
+    @Test
+    void quotedFieldsKeepCommasAndLineEndings() throws IOException {
+        assertEquals(List.of(
+                List.of("1", "Ann Arbor, MI", "line one\r\nline two\nline three"),
+                List.of("2", "Boston", "one line")),
+                records("1,\"Ann Arbor, MI\",\"line one\r\nline two\nline three\"\r\n2,Boston,one line\r\n"));
+    }
+
+    @Test
+    void emptyFieldsAreNullUnlessQuoted() throws IOException {
+        assertEquals(List.of(
+                fields("a", null, ""),
+                fields(null, null, null),
+                fields("", ""),
+                fields((String) null)), records("a,,\"\"\n,,\n\"\",\"\"\n\n"));
+    }
+
+    @Test
+    void unterminatedQuoteFails() {
+        assertThrows(IOException.class, () -> records("1,\"never closed\n2,x"));
+    }
+
+    private static List<List<String>> records(String csv) throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        for (List<String> record = reader.next(); record != null; record = reader.next()) records.add(record);
+        return records;
+    }
+
+    // List.of doesn't take nulls
+    private static List<String> fields(String... values) {
+        return Arrays.asList(values);
+    }
+}
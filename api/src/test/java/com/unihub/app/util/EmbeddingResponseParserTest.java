@@ -0,0 +1,68 @@
+package com.unihub.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * parseDouble against Double.parseDouble, bit for bit, on both sides of its fast path.
+ */
+class EmbeddingResponseParserTest {
+
+    @Test
+    void negativeZeroKeepsItsSign() {
+        assertParsesLikeJdk("-0", "-0.0", "-0.000", "-0e5", "0", "0.0");
+    }
+
+    @Test
+    void leadingZerosDontCountAsDigits() {
+        assertParsesLikeJdk("0.000000000000001234567890123", "00012.5", "0.0000000123456789012345",
+                "-0.00000000000000000000001");
+    }
+
+    @Test
+    void exponentsAroundTheFastPathBoundary() {
+        assertParsesLikeJdk("1e22", "1e23", "1e-22", "1e-23", "9.5e22", "9.5e-22",
+                "123456789012345e22", "123456789012345e-22", "1.5E+22", "1.5E-23",
+                "0.1e-21", "0.01e-21", "1e308", "1e-400", "4.9e-324", "1e400");
+    }
+
+    @Test
+    void moreThanFifteenSignificantDigits() {
+        assertParsesLikeJdk("123456789012345", "1234567890123456", "0.1234567890123456789",
+                "9007199254740993", "-0.30000000000000004", "1.00000000000000000001", "0.12345678901234567e-3");
+    }
+
+    @Test
+    void integerTokens() {
+        assertParsesLikeJdk("1", "-1", "42", "-9007199254740992", "123456789012345678901234567890");
+    }
+
+    @Test
+    void randomEmbeddingValues() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // what the endpoint sends: roughly unit-scaled floats, some in exponent notation
+            double value = random.nextGaussian() * Math.pow(10, -random.nextInt(6));
+            String text = switch (random.nextInt(3)) {
+                case 0 -> Double.toString(value);
+                case 1 -> Float.toString((float) value);
+                default -> String.format(Locale.ROOT, "%.8e", value);
+            };
+            assertParsesLikeJdk(text);
+        }
+    }
+
+    private static void assertParsesLikeJdk(String... texts) {
+        for (String text : List.of(texts)) {
+            // parsed out of the middle of a buffer, as it is from Jackson's
+            char[] buffer = ("[" + text + ",").toCharArray();
+            double parsed = EmbeddingResponseParser.parseDouble(buffer, 1, text.length());
+            assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)), Double.doubleToRawLongBits(parsed), text);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.unihub.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The graph against brute force over random unit vectors: recall of the k nearest, exact hits
+ * for stored vectors, and what replacing and removing ids leaves behind.
+ */
+class HnswIndexTest {
+    private static final int DIMENSIONS = 32;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void recallAgainstBruteForce() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int id = 0; id < 3000; id++) {
+            vectors.add(unitVector());
+            index.add(id, vectors.get(id));
+        }
+
+        int k = 10;
+        int hits = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            float[] query = unitVector();
+            Set<Integer> exact = new HashSet<>(bruteForce(vectors, query, k));
+            List<HnswIndex.Neighbour> found = index.search(query, k, 100);
+
+            assertEquals(k, found.size());
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(found.get(i - 1).distance() <= found.get(i).distance(), "not nearest first");
+            }
+            for (HnswIndex.Neighbour neighbour : found) {
+                assertEquals(distance(vectors.get(neighbour.id()), query), neighbour.distance(), 1e-5);
+                if (exact.contains(neighbour.id())) hits++;
+            }
+        }
+        double recall = (double) hits / (queries * k);
+        assertTrue(recall >= 0.95, "recall " + recall);
+    }
+
+    @Test
+    void storedVectorIsItsOwnNearest() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        List<float[]> vectors = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            vectors.add(unitVector());
+            index.add(id, vectors.get(id));
+        }
+
+        for (int id = 0; id < 500; id += 7) {
+            HnswIndex.Neighbour nearest = index.search(vectors.get(id), 1, 50).get(0);
+            assertEquals(id, nearest.id());
+            assertEquals(0, nearest.distance(), 1e-5);
+            assertArrayEquals(vectors.get(id), index.vector(id));
+        }
+    }
+
+    @Test
+    void addReplacesTheVectorAndAddIfAbsentDoesNot() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        for (int id = 0; id < 200; id++) index.add(id, unitVector());
+
+        float[] moved = unitVector();
+        index.add(42, moved);
+        assertEquals(200, index.size());
+        assertArrayEquals(moved, index.vector(42));
+        assertEquals(42, index.search(moved, 1, 50).get(0).id());
+        // the old node is a tombstone, never returned
+        assertEquals(1, index.search(moved, 200, 200).stream().filter(n -> n.id() == 42).count());
+
+        assertFalse(index.addIfAbsent(42, unitVector()));
+        assertArrayEquals(moved, index.vector(42));
+        assertTrue(index.addIfAbsent(200, moved));
+        assertEquals(201, index.size());
+    }
+
+    @Test
+    void removedIdsAreNeverReturned() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        List<float[]> vectors = new ArrayList<>();
+        for (int id = 0; id < 300; id++) {
+            vectors.add(unitVector());
+            index.add(id, vectors.get(id));
+        }
+
+        for (int id = 0; id < 300; id += 10) assertTrue(index.remove(id));
+        assertFalse(index.remove(0));
+        assertFalse(index.remove(1000));
+        assertEquals(270, index.size());
+        assertFalse(index.contains(10));
+        assertNull(index.vector(10));
+
+        List<HnswIndex.Neighbour> everything = index.search(vectors.get(10), 300, 300);
+        assertEquals(270, everything.size());
+        assertTrue(everything.stream().noneMatch(n -> n.id() % 10 == 0));
+        assertEquals(Set.copyOf(IntStream.range(0, 300).filter(id -> id % 10 != 0).boxed().toList()),
+                Set.copyOf(IntStream.of(index.liveIds()).boxed().toList()));
+    }
+
+    @Test
+    void tombstonesAreReclaimedPastTheirShare() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50, 0.2);
+        List<float[]> vectors = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            vectors.add(unitVector());
+            index.add(id, vectors.get(id));
+        }
+
+        // every event edited a few times over
+        for (int round = 0; round < 5; round++) {
+            for (int id = 0; id < 500; id++) {
+                vectors.set(id, unitVector());
+                index.add(id, vectors.get(id));
+                assertTrue(index.tombstones() <= 0.2 * (index.size() + index.tombstones()), "tombstones " + index.tombstones());
+            }
+        }
+        for (int id = 400; id < 500; id++) index.remove(id);
+        assertTrue(index.tombstones() <= 0.2 * (index.size() + index.tombstones()));
+
+        assertEquals(400, index.size());
+        for (int id = 0; id < 400; id += 13) {
+            HnswIndex.Neighbour nearest = index.search(vectors.get(id), 1, 50).get(0);
+            assertEquals(id, nearest.id());
+            assertEquals(0, nearest.distance(), 1e-5);
+        }
+    }
+
+    @Test
+    void wrongDimensionsAreRejected() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        assertThrows(IllegalArgumentException.class, () -> index.add(1, new float[DIMENSIONS + 1]));
+        assertTrue(index.search(unitVector(), 5, 50).isEmpty());
+    }
+
+    private static List<Integer> bruteForce(List<float[]> vectors, float[] query, int k) {
+        return IntStream.range(0, vectors.size()).boxed()
+                .sorted(Comparator.comparingDouble(id -> distance(vectors.get(id), query)))
+                .limit(k)
+                .toList();
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float dot = 0;
+        for (int i = 0; i < a.length; i++) dot += a[i] * b[i];
+        return 1 - dot;
+    }
+
+    private float[] unitVector() {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) vector[i] /= (float) Math.sqrt(norm);
+        return vector;
+    }
+}
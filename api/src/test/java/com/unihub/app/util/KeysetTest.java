@@ -0,0 +1,175 @@
+package com.unihub.app.util;
+
+import com.unihub.app.exception.InvalidCursorException;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.unihub.app.util.Keyset.KeyType.*;
+import static com.unihub.app.util.Keyset.asc;
+import static com.unihub.app.util.Keyset.desc;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The seek conditions as SQL, the expanded one also evaluated against rows full of ties, and
+ * cursors through encode and decode.
+ */
+class KeysetTest {
+    private final Keyset mixed = new Keyset("mixed", asc("a", INTEGER), desc("b", DOUBLE), asc("c", INTEGER));
+
+    @Test
+    void sameDirectionSeeksWithARowValue() {
+        Keyset popularity = new Keyset("popularity", desc("e.num_attendees", INTEGER), desc("e.id", INTEGER));
+
+        assertEquals("(e.num_attendees, e.id) < (:cursor0, :cursor1)", popularity.seek());
+        assertEquals("e.num_attendees DESC, e.id DESC", popularity.orderBy());
+    }
+
+    @Test
+    void mixedDirectionsExpandBehindABoundOnTheFirstKey() {
+        assertEquals("a >= :cursor0 AND (a > :cursor0 OR (a = :cursor0 AND "
+                + "(b < :cursor1 OR (b = :cursor1 AND c > :cursor2))))", mixed.seek());
+        assertEquals("a ASC, b DESC, c ASC", mixed.orderBy());
+    }
+
+    @Test
+    void mixedSeekSelectsExactlyTheRowsAfterTheCursor() {
+        List<Map<String, Double>> rows = new ArrayList<>();
+        int c = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 3; b++) {
+                // ties on a and b, only c tells them apart
+                for (int tie = 0; tie < 2; tie++) rows.add(Map.of("a", (double) a, "b", b / 2.0, "c", (double) c++));
+            }
+        }
+        rows.sort(Comparator.<Map<String, Double>>comparingDouble(row -> row.get("a"))
+                .thenComparing(row -> -row.get("b"))
+                .thenComparingDouble(row -> row.get("c")));
+
+        String seek = mixed.seek();
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Double> cursor = rows.get(i);
+            List<Map<String, Double>> after = new ArrayList<>();
+            for (Map<String, Double> row : rows) {
+                Map<String, Double> bound = new HashMap<>(row);
+                bound.put(":cursor0", cursor.get("a"));
+                bound.put(":cursor1", cursor.get("b"));
+                bound.put(":cursor2", cursor.get("c"));
+                if (new Condition(seek, bound).evaluate()) after.add(row);
+            }
+            assertEquals(rows.subList(i + 1, rows.size()), after, "after row " + i);
+        }
+    }
+
+    @Test
+    void cursorRoundTripsEveryKeyType() {
+        Keyset keyset = new Keyset("recency-search",
+                asc("e.event_start_date_utc", INSTANT), asc("knn.distance", DOUBLE), asc("e.id", INTEGER));
+        Instant start = Instant.parse("2026-03-14T18:30:00.123456Z");
+
+        String cursor = keyset.encode(start, 0.1 + 0.2, 42);
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"), "not URL safe: " + cursor);
+        assertArrayEquals(new Object[]{start, 0.1 + 0.2, 42}, keyset.decode(cursor));
+    }
+
+    @Test
+    void boundValuesGoToTheirParameters() {
+        Map<String, Object> parameters = new HashMap<>();
+        Query query = (Query) Proxy.newProxyInstance(Query.class.getClassLoader(), new Class<?>[]{Query.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("setParameter")) parameters.put((String) args[0], args[1]);
+                    return proxy;
+                });
+
+        mixed.bind(query, mixed.decode(mixed.encode(3, -1.5, 7)));
+
+        assertEquals(Map.of("cursor0", 3, "cursor1", -1.5, "cursor2", 7), parameters);
+    }
+
+    @Test
+    void cursorOfAnotherSortIsRejected() {
+        Keyset other = new Keyset("other", asc("a", INTEGER), desc("b", DOUBLE), asc("c", INTEGER));
+
+        assertThrows(InvalidCursorException.class, () -> mixed.decode(other.encode(1, 2.0, 3)));
+        assertThrows(InvalidCursorException.class, () -> mixed.decode(new Keyset("mixed", asc("a", INTEGER)).encode(1)));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertThrows(InvalidCursorException.class, () -> mixed.decode("not base64!"));
+        assertThrows(InvalidCursorException.class, () -> mixed.decode(mixed.encode("one", 2.0, 3)));
+        String truncated = Base64.getUrlEncoder().withoutPadding().encodeToString("mixed\n1\n2.0".getBytes());
+        assertThrows(InvalidCursorException.class, () -> mixed.decode(truncated));
+        assertThrows(IllegalArgumentException.class, () -> mixed.encode(1, 2.0));
+    }
+
+    /** Evaluates the comparisons, AND, OR and parentheses a seek is made of. */
+    private static class Condition {
+        private static final Pattern TOKEN = Pattern.compile("\\(|\\)|>=|<=|[<>=]|[\\w.:]+");
+
+        private final List<String> tokens = new ArrayList<>();
+        private final Map<String, Double> values;
+        private int position;
+
+        Condition(String sql, Map<String, Double> values) {
+            Matcher matcher = TOKEN.matcher(sql);
+            while (matcher.find()) tokens.add(matcher.group());
+            this.values = values;
+        }
+
+        boolean evaluate() {
+            boolean result = or();
+            assertEquals(tokens.size(), position, "trailing tokens");
+            return result;
+        }
+
+        private boolean or() {
+            boolean result = and();
+            while (position < tokens.size() && tokens.get(position).equals("OR")) {
+                position++;
+                result |= and();
+            }
+            return result;
+        }
+
+        private boolean and() {
+            boolean result = comparison();
+            while (position < tokens.size() && tokens.get(position).equals("AND")) {
+                position++;
+                result &= comparison();
+            }
+            return result;
+        }
+
+        private boolean comparison() {
+            if (tokens.get(position).equals("(")) {
+                position++;
+                boolean result = or();
+                assertEquals(")", tokens.get(position++));
+                return result;
+            }
+            double left = values.get(tokens.get(position++));
+            String operator = tokens.get(position++);
+            double right = values.get(tokens.get(position++));
+            return switch (operator) {
+                case ">" -> left > right;
+                case "<" -> left < right;
+                case ">=" -> left >= right;
+                case "<=" -> left <= right;
+                case "=" -> left == right;
+                default -> fail("unexpected operator " + operator);
+            };
+        }
+    }
+}
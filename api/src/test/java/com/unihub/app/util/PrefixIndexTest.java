@@ -0,0 +1,81 @@
+package com.unihub.app.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Typeahead over college names: word splitting and folding, and prefixes that cover a run of
+ * neighbouring words in the vocabulary.
+ */
+class PrefixIndexTest {
+    private static final List<String> COLLEGES = List.of(
+            "University of Michigan-Ann Arbor",
+            "Michigan State University",
+            "Université de Montréal",
+            "The University of Texas at Austin",
+            "Universidad Nacional Autónoma de México",
+            "Texas A&M University",
+            "Unity College");
+
+    private final PrefixIndex<String> index = new PrefixIndex<>(COLLEGES, Function.identity());
+
+    @Test
+    void wordsAreFoldedAndSplitOnPunctuation() {
+        assertEquals(List.of("universite", "de", "montreal"), PrefixIndex.words("Université de Montréal"));
+        assertEquals(List.of("texas", "a", "m", "university"), PrefixIndex.words("Texas A&M University"));
+        assertEquals(List.of("university", "michigan", "ann", "arbor"), PrefixIndex.words("  University of Michigan-Ann Arbor "));
+        assertEquals(List.of(), PrefixIndex.words(null));
+    }
+
+    @Test
+    void accentsMatchEitherWay() {
+        assertEquals(List.of("Université de Montréal"), index.search("montreal"));
+        assertEquals(List.of("Université de Montréal"), index.search("MONTRÉ"));
+        assertEquals(List.of("Universidad Nacional Autónoma de México"), index.search("mexico auto"));
+    }
+
+    @Test
+    void stopwordsAreIgnoredInTheQuery() {
+        assertEquals(List.of("University of Michigan-Ann Arbor", "Michigan State University"), index.search("university of michigan"));
+        assertEquals(List.of("The University of Texas at Austin"), index.search("the univ at austin"));
+        assertTrue(index.search("of the").isEmpty());
+        assertTrue(index.search("  -- ").isEmpty());
+    }
+
+    @Test
+    void prefixCoversEveryWordItStarts() {
+        // "uni" spans unity, universidad, universite and university, which sort next to each other
+        assertEquals(COLLEGES, index.search("uni"));
+        assertEquals(List.of(
+                "University of Michigan-Ann Arbor",
+                "Michigan State University",
+                "Université de Montréal",
+                "The University of Texas at Austin",
+                "Universidad Nacional Autónoma de México",
+                "Texas A&M University"), index.search("univers"));
+        assertEquals(List.of("Université de Montréal"), index.search("universite"));
+        assertEquals(List.of("Unity College"), index.search("unit"));
+    }
+
+    @Test
+    void everyQueryWordHasToMatch() {
+        assertEquals(List.of("University of Michigan-Ann Arbor"), index.search("univ of mich ann"));
+        assertEquals(List.of("Texas A&M University"), index.search("texas a m"));
+        assertTrue(index.search("michigan texas").isEmpty());
+        // past the last word of the vocabulary
+        assertTrue(index.search("zz").isEmpty());
+    }
+
+    @Test
+    void matchesComeBackInDocumentOrder() {
+        PrefixIndex<Integer> numbers = new PrefixIndex<>(List.of(30, 10, 20), n -> "college " + n);
+
+        assertEquals(List.of(30, 10, 20), numbers.search("coll"));
+        assertEquals(List.of(10), numbers.search("1"));
+        assertEquals(3, numbers.size());
+    }
+}
@@ -4,7 +4,7 @@ import { useState } from "react"
 import { useRouter } from "next/navigation"
 import { Button } from "@/components/ui/button"
 import { Badge } from "@/components/ui/badge"
-import { MapPin, Users, Clock, CheckCircle2, XCircle, Ban, Calendar, CalendarClock, UserCheck, Ticket, ShieldCheck } from "lucide-react"
+import { MapPin, Users, Clock, CheckCircle2, XCircle, Ban, Hourglass, Calendar, CalendarClock, UserCheck, Ticket, ShieldCheck } from "lucide-react"
 import { Event, RegistrationStatus } from "@/types/responses"
 import { AnswerRequest } from "@/types/requests"
 import { formatAttendees } from "@/utils/formatAttendees"
@@ -135,6 +135,8 @@ export function EventDetailsClient({ event }: EventDetailsClientProps) {
         return <XCircle className="h-4 w-4" />
       case RegistrationStatus.CANCELLED:
         return <Ban className="h-4 w-4" />
+      case RegistrationStatus.WAITLISTED:
+        return <Hourglass className="h-4 w-4" />
       default:
         return null
     }
@@ -151,6 +153,8 @@ export function EventDetailsClient({ event }: EventDetailsClientProps) {
         return 'Rejected'
       case RegistrationStatus.CANCELLED:
         return 'Cancelled'
+      case RegistrationStatus.WAITLISTED:
+        return 'Waitlisted'
       default:
         return ''
     }
@@ -167,6 +171,8 @@ export function EventDetailsClient({ event }: EventDetailsClientProps) {
         return 'text-red-600'
       case RegistrationStatus.CANCELLED:
         return 'text-gray-600'
+      case RegistrationStatus.WAITLISTED:
+        return 'text-blue-600'
       default:
         return 'text-muted-foreground'
     }
@@ -1,7 +1,7 @@
 "use client"
 
 import { useState, useMemo } from "react"
-import { Search, Clock, CheckCircle2, XCircle, Ban, Ticket } from "lucide-react"
+import { Search, Clock, CheckCircle2, XCircle, Ban, Hourglass, Ticket } from "lucide-react"
 import { Registration, RegistrationStatus } from "@/types/responses"
 import { Card } from "@/components/ui/card"
 import { Input } from "@/components/ui/input"
@@ -49,6 +49,8 @@ export function AttendeeCard({ registration, canUpdateStatus = false, eventId, c
         return <XCircle className="h-4 w-4" />
       case RegistrationStatus.CANCELLED:
         return <Ban className="h-4 w-4" />
+      case RegistrationStatus.WAITLISTED:
+        return <Hourglass className="h-4 w-4" />
       default:
         return null
     }
@@ -64,6 +66,8 @@ export function AttendeeCard({ registration, canUpdateStatus = false, eventId, c
         return 'Rejected'
       case RegistrationStatus.CANCELLED:
         return 'Cancelled'
+      case RegistrationStatus.WAITLISTED:
+        return 'Waitlisted'
       default:
         return ''
     }
@@ -79,6 +83,8 @@ export function AttendeeCard({ registration, canUpdateStatus = false, eventId, c
         return 'text-red-600'
       case RegistrationStatus.CANCELLED:
         return 'text-gray-600'
+      case RegistrationStatus.WAITLISTED:
+        return 'text-blue-600'
       default:
         return 'text-muted-foreground'
     }
@@ -176,6 +182,12 @@ export function AttendeeCard({ registration, canUpdateStatus = false, eventId, c
                       <span>Cancelled</span>
                     </div>
                   </SelectItem>
+                  <SelectItem value={RegistrationStatus.WAITLISTED}>
+                    <div className="flex items-center gap-2">
+                      <Hourglass className="h-3 w-3" />
+                      <span>Waitlisted</span>
+                    </div>
+                  </SelectItem>
                 </SelectContent>
               </Select>
             ) : (
@@ -1,7 +1,7 @@
 import { Card, CardContent, CardFooter, CardHeader } from "@/components/ui/card"
 import { Button } from "@/components/ui/button"
 import { Badge } from "@/components/ui/badge"
-import { Calendar, MapPin, Users, Clock, CheckCircle2, XCircle, Ban } from "lucide-react"
+import { Calendar, MapPin, Users, Clock, CheckCircle2, XCircle, Ban, Hourglass } from "lucide-react"
 import { Event, RegistrationStatus } from "@/types/responses"
 import { cn } from "@/utils/cn"
 import { formatEventDate } from "@/utils/formatEventDate"
@@ -25,6 +25,8 @@ export function EventCard({ event, variant = 'default', className, status }: Eve
         return <XCircle className="h-4 w-4" />
       case RegistrationStatus.CANCELLED:
         return <Ban className="h-4 w-4" />
+      case RegistrationStatus.WAITLISTED:
+        return <Hourglass className="h-4 w-4" />
       default:
         return null
     }
@@ -40,6 +42,8 @@ export function EventCard({ event, variant = 'default', className, status }: Eve
         return 'Rejected'
       case RegistrationStatus.CANCELLED:
         return 'Cancelled'
+      case RegistrationStatus.WAITLISTED:
+        return 'Waitlisted'
       default:
         return ''
     }
@@ -55,6 +59,8 @@ export function EventCard({ event, variant = 'default', className, status }: Eve
         return 'text-red-600'
       case RegistrationStatus.CANCELLED:
         return 'text-gray-600'
+      case RegistrationStatus.WAITLISTED:
+        return 'text-blue-600'
       default:
         return 'text-muted-foreground'
     }
@@ -139,6 +139,7 @@ export enum RegistrationStatus {
     APPROVED = 'APPROVED',
     REJECTED = 'REJECTED',
     CANCELLED = 'CANCELLED',
+    WAITLISTED = 'WAITLISTED',
 }
 
 export enum QuestionType {